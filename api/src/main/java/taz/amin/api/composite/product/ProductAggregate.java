@@ -9,6 +9,12 @@ public class ProductAggregate {
     private final List<RecommendationSummary> recommendations;
     private final List<ReviewSummary> reviews;
     private final ServiceAddresses serviceAddresses;
+    // Parts of a partial response that could not be fetched, e.g. "recommendations" or "reviews"
+    private final List<String> missing;
+    // Parts that are served from the last successful lookup, since a fresh one failed or was too slow
+    private final List<String> stale;
+    // Parts of which only the first page is included, since there are more of them
+    private final List<String> truncated;
 
     public ProductAggregate() {
         productId = 0;
@@ -17,15 +23,25 @@ public class ProductAggregate {
         recommendations = null;
         reviews = null;
         serviceAddresses = null;
+        missing = List.of();
+        stale = List.of();
+        truncated = List.of();
     }
 
     public ProductAggregate(int productId, String name, int weight, List<RecommendationSummary> recommendations, List<ReviewSummary> reviews, ServiceAddresses serviceAddresses) {
+        this(productId, name, weight, recommendations, reviews, serviceAddresses, List.of(), List.of(), List.of());
+    }
+
+    public ProductAggregate(int productId, String name, int weight, List<RecommendationSummary> recommendations, List<ReviewSummary> reviews, ServiceAddresses serviceAddresses, List<String> missing, List<String> stale, List<String> truncated) {
         this.productId = productId;
         this.name = name;
         this.weight = weight;
         this.recommendations = recommendations;
         this.reviews = reviews;
         this.serviceAddresses = serviceAddresses;
+        this.missing = missing;
+        this.stale = stale;
+        this.truncated = truncated;
     }
 
     public int getProductId() {
@@ -51,4 +67,16 @@ public class ProductAggregate {
     public ServiceAddresses getServiceAddresses() {
         return serviceAddresses;
     }
+
+    public List<String> getMissing() {
+        return missing;
+    }
+
+    public List<String> getStale() {
+        return stale;
+    }
+
+    public List<String> getTruncated() {
+        return truncated;
+    }
 }
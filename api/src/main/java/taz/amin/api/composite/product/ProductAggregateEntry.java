@@ -0,0 +1,42 @@
+package taz.amin.api.composite.product;
+
+/**
+ * One entry of a batch lookup of composite products. Products that can't be returned are
+ * reported with an HTTP-like status and a message instead of failing the whole batch.
+ */
+public class ProductAggregateEntry {
+    private final int productId;
+    private final int status;
+    private final String message;
+    private final ProductAggregate aggregate;
+
+    public ProductAggregateEntry() {
+        productId = 0;
+        status = 0;
+        message = null;
+        aggregate = null;
+    }
+
+    public ProductAggregateEntry(int productId, int status, String message, ProductAggregate aggregate) {
+        this.productId = productId;
+        this.status = status;
+        this.message = message;
+        this.aggregate = aggregate;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public ProductAggregate getAggregate() {
+        return aggregate;
+    }
+}
@@ -0,0 +1,86 @@
+package taz.amin.api.composite.product;
+
+import java.util.List;
+
+/**
+ * One section of a product aggregate in a streamed response, sent as soon as the service that
+ * provides it has responded. The product section comes first, then the recommendations and
+ * reviews sections in the order they arrive. Only the fields of the section type are set.
+ */
+public class ProductAggregateSection {
+    public static final String PRODUCT = "product";
+    public static final String RECOMMENDATIONS = "recommendations";
+    public static final String REVIEWS = "reviews";
+
+    private final String section;
+    private final int productId;
+    private final String name;
+    private final Integer weight;
+    private final List<RecommendationSummary> recommendations;
+    private final List<ReviewSummary> reviews;
+    private final String serviceAddress;
+    // "fresh", "stale" if served from the last successful lookup, or "missing" if it could not be fetched
+    private final String status;
+    // True if only the first page of the recommendations or reviews is included, since there are more of them
+    private final Boolean truncated;
+
+    public ProductAggregateSection() {
+        section = null;
+        productId = 0;
+        name = null;
+        weight = null;
+        recommendations = null;
+        reviews = null;
+        serviceAddress = null;
+        status = null;
+        truncated = null;
+    }
+
+    public ProductAggregateSection(String section, int productId, String name, Integer weight, List<RecommendationSummary> recommendations, List<ReviewSummary> reviews, String serviceAddress, String status, Boolean truncated) {
+        this.section = section;
+        this.productId = productId;
+        this.name = name;
+        this.weight = weight;
+        this.recommendations = recommendations;
+        this.reviews = reviews;
+        this.serviceAddress = serviceAddress;
+        this.status = status;
+        this.truncated = truncated;
+    }
+
+    public String getSection() {
+        return section;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Integer getWeight() {
+        return weight;
+    }
+
+    public List<RecommendationSummary> getRecommendations() {
+        return recommendations;
+    }
+
+    public List<ReviewSummary> getReviews() {
+        return reviews;
+    }
+
+    public String getServiceAddress() {
+        return serviceAddress;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public Boolean getTruncated() {
+        return truncated;
+    }
+}
@@ -4,7 +4,12 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
 
 @Tag(name = "ProductComposite", description = "REST API for composite product information.")
 public interface ProductCompositeService {
@@ -28,19 +33,54 @@ public interface ProductCompositeService {
     @PostMapping(
             value    = "/product-composite",
             consumes = "application/json")
-    void createProduct(@RequestBody ProductAggregate body);
+    Mono<Void> createProduct(@RequestBody ProductAggregate body);
 
 
     /**
-     * Sample usage: "curl $HOST:$PORT/product-composite/1".
+     * Sample usage: "curl $HOST:$PORT/product-composite/1" or "curl $HOST:$PORT/product-composite/1?include=reviews".
      *
      * @param productId Id of the product
-     * @return the composite product info, if found, else null
+     * @param include the parts to include besides the product, "recommendations" and/or "reviews",
+     *                or "product" for the product only. All parts are included if not present.
+     *                Parts that are not included are not requested from their services at all
+     * @return the composite product info, if found, else null. The product, its recommendations
+     *         and its reviews are requested concurrently and combined once all three have arrived.
+     *         The response carries an ETag derived from the parts, a request with a matching
+     *         If-None-Match header gets a 304 without a body
      */
     @Operation(
             summary = "${api.product-composite.get-composite-product.description}",
             description = "${api.product-composite.get-composite-product.notes}"
     )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "${api.responseCodes.ok.description}"),
+            @ApiResponse(responseCode = "304", description = "${api.responseCodes.notModified.description}"),
+            @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
+            @ApiResponse(responseCode = "404", description = "${api.responseCodes.notFound.description}"),
+            @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}"),
+            @ApiResponse(responseCode = "503", description = "${api.responseCodes.serviceUnavailable.description}"),
+            @ApiResponse(responseCode = "504", description = "${api.responseCodes.gatewayTimeout.description}")
+    })
+    @GetMapping(
+            value = "/product-composite/{productId}",
+            produces = "application/json")
+    Mono<ResponseEntity<ProductAggregate>> getProduct(
+        @PathVariable int productId,
+        @RequestParam(value = "include", required = false) List<String> include);
+
+    /**
+     * Sample usage: "curl -N -H 'Accept: application/x-ndjson' $HOST:$PORT/product-composite/1".
+     *
+     * @param productId Id of the product
+     * @param include the sections to send besides the product section, as for the JSON response
+     * @return the composite product info as a stream of sections, one per line for
+     *         application/x-ndjson or one per event for text/event-stream. The product section is
+     *         sent as soon as the product has been found, without waiting for the other sections
+     */
+    @Operation(
+            summary = "${api.product-composite.stream-composite-product.description}",
+            description = "${api.product-composite.stream-composite-product.notes}"
+    )
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "${api.responseCodes.ok.description}"),
             @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
@@ -49,8 +89,31 @@ public interface ProductCompositeService {
     })
     @GetMapping(
             value = "/product-composite/{productId}",
+            produces = {"application/x-ndjson", "text/event-stream"})
+    Flux<ProductAggregateSection> getProductSections(
+        @PathVariable int productId,
+        @RequestParam(value = "include", required = false) List<String> include);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/product-composite?productIds=1,2,3".
+     *
+     * @param productIds Ids of the products
+     * @return one entry per distinct product id, in the order they were requested. Products that
+     *         are not found are returned as entries with status 404 instead of failing the batch
+     */
+    @Operation(
+            summary = "${api.product-composite.get-composite-products.description}",
+            description = "${api.product-composite.get-composite-products.notes}"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "${api.responseCodes.ok.description}"),
+            @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
+            @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
+    })
+    @GetMapping(
+            value = "/product-composite",
             produces = "application/json")
-    ProductAggregate getProduct(@PathVariable int productId);
+    Flux<ProductAggregateEntry> getProducts(@RequestParam List<Integer> productIds);
 
     /**
      * Sample usage: "curl -X DELETE $HOST:$PORT/product-composite/1".
@@ -65,5 +128,5 @@ public interface ProductCompositeService {
             @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
     })
     @DeleteMapping(value = "/product-composite/{productId}")
-    void deleteProduct(@PathVariable int productId);
+    Mono<Void> deleteProduct(@PathVariable int productId);
 }
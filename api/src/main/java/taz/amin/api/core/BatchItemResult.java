@@ -0,0 +1,35 @@
+package taz.amin.api.core;
+
+/**
+ * The outcome of one item in a batch create request. Items are identified by their position in
+ * the request, status is the HTTP status the item would have got if it had been created on its own.
+ */
+public class BatchItemResult {
+    private final int index;
+    private final int status;
+    private final String message;
+
+    public BatchItemResult() {
+        index = 0;
+        status = 0;
+        message = null;
+    }
+
+    public BatchItemResult(int index, int status, String message) {
+        this.index = index;
+        this.status = status;
+        this.message = message;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
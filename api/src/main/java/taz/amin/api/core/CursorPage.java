@@ -0,0 +1,74 @@
+package taz.amin.api.core;
+
+import taz.amin.api.exceptions.InvalidInputException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * One page of the items of a product, sorted by their id. next is an opaque cursor to pass as
+ * "after" to get the following page, null on the last page.
+ *
+ * The cursor holds the product id and the id of the last item on the page, so the following
+ * page is a seek on the (productId, id) index and costs the same whatever page it is.
+ */
+public class CursorPage<T> {
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final List<T> items;
+    private final String next;
+
+    public CursorPage() {
+        items = null;
+        next = null;
+    }
+
+    public CursorPage(List<T> items, String next) {
+        this.items = items;
+        this.next = next;
+    }
+
+    /**
+     * @param fetched the items after the cursor, at most limit + 1 of them, where the extra one
+     *                only tells that there is a following page
+     * @param idOf the id of an item, that the items are sorted by
+     */
+    public static <T> CursorPage<T> of(int productId, List<T> fetched, int limit, ToIntFunction<T> idOf) {
+        if (fetched.size() <= limit) {
+            return new CursorPage<>(fetched, null);
+        }
+        List<T> items = fetched.subList(0, limit);
+        return new CursorPage<>(items, encodeCursor(productId, idOf.applyAsInt(items.get(limit - 1))));
+    }
+
+    public static String encodeCursor(int productId, int lastId) {
+        return ENCODER.encodeToString((productId + ":" + lastId).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @return the id of the last item on the previous page
+     * @throws InvalidInputException if the cursor is malformed or belongs to another product
+     */
+    public static int decodeCursor(int productId, String cursor) {
+        try {
+            String[] parts = new String(DECODER.decode(cursor), StandardCharsets.US_ASCII).split(":");
+            if (parts.length == 2 && Integer.parseInt(parts[0]) == productId) {
+                return Integer.parseInt(parts[1]);
+            }
+        } catch (IllegalArgumentException ex) {
+            // Falls through, NumberFormatException is an IllegalArgumentException as well
+        }
+        throw new InvalidInputException("Invalid cursor: " + cursor);
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNext() {
+        return next;
+    }
+}
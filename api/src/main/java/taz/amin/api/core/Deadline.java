@@ -0,0 +1,77 @@
+package taz.amin.api.core;
+
+import reactor.core.publisher.Mono;
+import taz.amin.api.exceptions.DeadlineExceededException;
+
+import java.time.Duration;
+
+/**
+ * The point in time when the caller of a request stops waiting for the response.
+ *
+ * The deadline is sent between the services as the remaining budget in milliseconds in the
+ * {@link #HEADER} header, a relative value so that the clocks of the hosts don't have to agree.
+ * Each service turns it back into a local deadline when the request arrives, makes it available
+ * to the handlers as the {@link #ATTRIBUTE} request attribute and in the Reactor context under
+ * the Deadline class, and sends the budget that is left to the services it calls in turn.
+ */
+public final class Deadline {
+    public static final String HEADER = "X-Request-Timeout";
+    public static final String ATTRIBUTE = "taz.amin.api.core.Deadline";
+
+    private final long expiresAtNanos;
+    private final Duration timeout;
+
+    private Deadline(long expiresAtNanos, Duration timeout) {
+        this.expiresAtNanos = expiresAtNanos;
+        this.timeout = timeout;
+    }
+
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos(), timeout);
+    }
+
+    /**
+     * @param headerValue the remaining budget in milliseconds, as sent in the {@link #HEADER} header
+     * @param maxTimeout the longest budget a caller may ask for, larger values are cut down to it
+     * @throws NumberFormatException if the value is not a number
+     */
+    public static Deadline fromHeaderValue(String headerValue, Duration maxTimeout) {
+        long millis = Long.parseLong(headerValue.trim());
+        return after(Duration.ofMillis(Math.min(millis, maxTimeout.toMillis())));
+    }
+
+    public String toHeaderValue() {
+        return String.valueOf(remaining().toMillis());
+    }
+
+    /**
+     * @return the budget the deadline was created with
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * @throws DeadlineExceededException if the deadline has passed, before starting on the named work
+     */
+    public void check(String work) {
+        if (isExpired()) {
+            throw new DeadlineExceededException("Deadline exceeded before " + work);
+        }
+    }
+
+    /**
+     * Fails the given work with a {@link DeadlineExceededException} if it has not completed when the deadline passes.
+     */
+    public <T> Mono<T> limit(Mono<T> work, String what) {
+        return work.timeout(remaining(), Mono.error(() -> new DeadlineExceededException("Deadline exceeded while waiting for " + what)));
+    }
+}
@@ -0,0 +1,97 @@
+package taz.amin.api.core;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * The time spent in each step of handling a request, sent back to the caller in the
+ * {@link #HEADER} header, e.g. "db;desc=\"getProduct\";dur=2.1", so that a slow response can be
+ * explained from the browser devtools or curl.
+ *
+ * Services with it enabled make it available to the handlers as the {@link #ATTRIBUTE} request
+ * attribute and in the Reactor context under the ServerTiming class, and end the header with the
+ * total time since the request arrived. A service relays the
+ * entries of the services it calls, prefixed with their name, e.g. "product-service.db".
+ */
+public final class ServerTiming {
+    public static final String HEADER = "Server-Timing";
+    public static final String ATTRIBUTE = "taz.amin.api.core.ServerTiming";
+
+    private final long createdAt = System.nanoTime();
+    private final Queue<String> entries = new ConcurrentLinkedQueue<>();
+    // Steps that end when the header is written, by name
+    private final Map<String, Long> started = new ConcurrentHashMap<>();
+
+    /**
+     * @param description what was done, or null
+     */
+    public void add(String name, String description, long nanos) {
+        StringBuilder entry = new StringBuilder(name);
+        if (description != null) {
+            entry.append(";desc=\"").append(description).append('"');
+        }
+        entry.append(";dur=").append(millis(nanos));
+        entries.add(entry.toString());
+    }
+
+    /**
+     * Times blocking work.
+     */
+    public <T> T time(String name, String description, Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            add(name, description, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Starts a step that ends when the header is written, e.g. serializing the response body.
+     */
+    public void start(String name) {
+        started.putIfAbsent(name, System.nanoTime());
+    }
+
+    /**
+     * @param headerValue the {@link #HEADER} header of a response from the named service
+     */
+    public void relay(String service, String headerValue) {
+        for (String entry : headerValue.split(",")) {
+            if (!entry.isBlank()) {
+                entries.add(service + "." + entry.trim());
+            }
+        }
+    }
+
+    /**
+     * Adds the entries of work that was shared with other requests.
+     */
+    public void addAll(ServerTiming shared) {
+        entries.addAll(shared.entries);
+    }
+
+    /**
+     * Ends the started steps, and returns all the entries followed by the total time since this
+     * was created.
+     */
+    public String toHeaderValue() {
+        long now = System.nanoTime();
+        started.forEach((name, start) -> {
+            if (started.remove(name, start)) {
+                add(name, null, now - start);
+            }
+        });
+        StringBuilder headerValue = new StringBuilder();
+        entries.forEach(entry -> headerValue.append(entry).append(", "));
+        return headerValue.append("total;dur=").append(millis(now - createdAt)).toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1_000_000.0);
+    }
+}
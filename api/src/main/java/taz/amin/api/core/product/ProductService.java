@@ -1,15 +1,40 @@
 package taz.amin.api.core.product;
 
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import taz.amin.api.core.Deadline;
+import taz.amin.api.core.ServerTiming;
+
+import java.util.List;
+
 public interface ProductService {
     /**
      * ex usage: "curl $HOST:$PORT/product/1"
      * @param productId product id of the product
-     * @return the product if found, else null
+     * @param deadline when the caller stops waiting, set from the X-Request-Timeout header if present
+     * @param timing the time spent per step, if the Server-Timing header is enabled
+     * @return the product if found, else null. The response carries an ETag derived from the version
+     *         of the product, a request with a matching If-None-Match header gets a 304 without a body
+     */
+    @GetMapping(value = "/product/{productId}", produces = {"application/json", "application/x-jackson-smile"})
+    ResponseEntity<Product> getProduct(
+        @PathVariable int productId,
+        @RequestAttribute(name = Deadline.ATTRIBUTE, required = false) Deadline deadline,
+        @RequestAttribute(name = ServerTiming.ATTRIBUTE, required = false) ServerTiming timing);
+
+    /**
+     * ex usage: "curl $HOST:$PORT/product?productIds=1,2,3"
+     * @param productIds product ids of the products
+     * @param deadline when the caller stops waiting, set from the X-Request-Timeout header if present
+     * @param timing the time spent per step, if the Server-Timing header is enabled
+     * @return the products found, sorted by product id. Product ids that are not found are left out
      */
-    @GetMapping(value = "/product/{productId}", produces = "application/json")
-    Product getProduct(@PathVariable int productId);
+    @GetMapping(value = "/product", params = "productIds", produces = {"application/json", "application/x-jackson-smile"})
+    List<Product> getProducts(
+        @RequestParam List<Integer> productIds,
+        @RequestAttribute(name = Deadline.ATTRIBUTE, required = false) Deadline deadline,
+        @RequestAttribute(name = ServerTiming.ATTRIBUTE, required = false) ServerTiming timing);
 
     /**
      * Sample usage, see below.
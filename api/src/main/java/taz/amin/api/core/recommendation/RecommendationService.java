@@ -1,6 +1,12 @@
 package taz.amin.api.core.recommendation;
 
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import taz.amin.api.core.BatchItemResult;
+import taz.amin.api.core.CursorPage;
+import taz.amin.api.core.Deadline;
+import taz.amin.api.core.ServerTiming;
 
 import java.util.List;
 
@@ -9,10 +15,57 @@ public interface RecommendationService {
     /**
      * ex usage: "curl $HOST:$PORT/recommendation?productId=1"
      * @param productId
-     * @return
+     * @return the recommendations of the product. The response carries an ETag derived from their
+     *         ids and versions, a request with a matching If-None-Match header gets a 304 without a body
      */
-    @GetMapping(value = "/recommendation", produces = "application/json")
-    List<Recommendation> getRecommendations(@RequestParam(required = true) int productId);
+    @GetMapping(value = "/recommendation", produces = {"application/json", "application/x-jackson-smile"})
+    ResponseEntity<List<Recommendation>> getRecommendations(
+        @RequestParam(required = true) int productId,
+        @RequestAttribute(name = Deadline.ATTRIBUTE, required = false) Deadline deadline,
+        @RequestAttribute(name = ServerTiming.ATTRIBUTE, required = false) ServerTiming timing);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/recommendation?productId=1&limit=10&after=MTox".
+     *
+     * @param productId Id of the product
+     * @param limit the max number of recommendations on the page
+     * @param after the next cursor of the previous page, or none for the first page
+     * @param deadline when the caller stops waiting, set from the X-Request-Timeout header if present
+     * @param timing the time spent per step, if the Server-Timing header is enabled
+     * @return a page of the recommendations of the product, sorted by recommendation id
+     */
+    @GetMapping(value = "/recommendation", params = "limit", produces = {"application/json", "application/x-jackson-smile"})
+    CursorPage<Recommendation> getRecommendationPage(
+        @RequestParam(required = true) int productId,
+        @RequestParam int limit,
+        @RequestParam(required = false) String after,
+        @RequestAttribute(name = Deadline.ATTRIBUTE, required = false) Deadline deadline,
+        @RequestAttribute(name = ServerTiming.ATTRIBUTE, required = false) ServerTiming timing);
+
+    /**
+     * Sample usage: "curl -N -H 'Accept: application/x-ndjson' $HOST:$PORT/recommendation?productId=1".
+     *
+     * @param productId Id of the product
+     * @return the recommendations of the product, one per line, read from a database cursor and
+     *         written as they are read, so that the memory used does not grow with the result size
+     */
+    @GetMapping(value = "/recommendation", produces = "application/x-ndjson")
+    Flux<Recommendation> streamRecommendations(@RequestParam(required = true) int productId);
+
+    /**
+     * ex usage: "curl $HOST:$PORT/recommendation?productIds=1,2,3"
+     * @param productIds Ids of the products
+     * @param deadline when the caller stops waiting, set from the X-Request-Timeout header if present
+     * @param timing the time spent per step, if the Server-Timing header is enabled
+     * @return the recommendations of all the products, sorted by product id so that the
+     *         recommendations of a product are grouped together
+     */
+    @GetMapping(value = "/recommendation", params = "productIds", produces = {"application/json", "application/x-jackson-smile"})
+    List<Recommendation> getRecommendations(
+        @RequestParam List<Integer> productIds,
+        @RequestAttribute(name = Deadline.ATTRIBUTE, required = false) Deadline deadline,
+        @RequestAttribute(name = ServerTiming.ATTRIBUTE, required = false) ServerTiming timing);
+
     /**
      * Sample usage, see below.
      *
@@ -26,6 +79,21 @@ public interface RecommendationService {
     @PostMapping(value = "/recommendation", produces = "application/json", consumes = "application/json")
     Recommendation createRecommendation(@RequestBody Recommendation body);
 
+    /**
+     * Sample usage, see below.
+     *
+     * curl -X POST $HOST:$PORT/recommendation/batch \
+     *   -H "Content-Type: application/json" --data \
+     *   '[{"productId":123,"recommendationId":1,"author":"me","rate":5,"content":"yada"},
+     *     {"productId":123,"recommendationId":2,"author":"me","rate":4,"content":"yada"}]'
+     *
+     * @param body A JSON array of the new recommendations
+     * @return one result per recommendation, in the same order. Duplicates are reported with status 422
+     *         without stopping the other recommendations from being created
+     */
+    @PostMapping(value = "/recommendation/batch", produces = "application/json", consumes = "application/json")
+    List<BatchItemResult> createRecommendations(@RequestBody List<Recommendation> body);
+
     /**
      * Sample usage: "curl -X DELETE $HOST:$PORT/recommendation?productId=1".
      *
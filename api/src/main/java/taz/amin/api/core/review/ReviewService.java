@@ -1,6 +1,12 @@
 package taz.amin.api.core.review;
 
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import taz.amin.api.core.BatchItemResult;
+import taz.amin.api.core.CursorPage;
+import taz.amin.api.core.Deadline;
+import taz.amin.api.core.ServerTiming;
 
 import java.util.List;
 
@@ -21,16 +27,91 @@ public interface ReviewService {
             produces = "application/json")
     Review createReview(@RequestBody Review body);
 
+    /**
+     * Sample usage, see below.
+     *
+     * curl -X POST $HOST:$PORT/review/batch \
+     *   -H "Content-Type: application/json" --data \
+     *   '[{"productId":123,"reviewId":1,"author":"me","subject":"yada","content":"yada"},
+     *     {"productId":123,"reviewId":2,"author":"me","subject":"yada","content":"yada"}]'
+     *
+     * @param body A JSON array of the new reviews
+     * @return one result per review, in the same order. Duplicates are reported with status 422
+     *         without stopping the other reviews from being created
+     */
+    @PostMapping(
+            value    = "/review/batch",
+            consumes = "application/json",
+            produces = "application/json")
+    List<BatchItemResult> createReviews(@RequestBody List<Review> body);
+
     /**
      * Sample usage: "curl $HOST:$PORT/review?productId=1".
      *
      * @param productId Id of the product
-     * @return the reviews of the product
+     * @param deadline when the caller stops waiting, set from the X-Request-Timeout header if present
+     * @param timing the time spent per step, if the Server-Timing header is enabled
+     * @return the reviews of the product. The response carries an ETag derived from their ids and
+     *         versions, a request with a matching If-None-Match header gets a 304 without a body
      */
     @GetMapping(
             value = "/review",
-            produces = "application/json")
-    List<Review> getReviews(@RequestParam(value = "productId", required = true) int productId);
+            produces = {"application/json", "application/x-jackson-smile"})
+    ResponseEntity<List<Review>> getReviews(
+        @RequestParam(value = "productId", required = true) int productId,
+        @RequestAttribute(name = Deadline.ATTRIBUTE, required = false) Deadline deadline,
+        @RequestAttribute(name = ServerTiming.ATTRIBUTE, required = false) ServerTiming timing);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/review?productId=1&limit=10&after=MTox".
+     *
+     * @param productId Id of the product
+     * @param limit the max number of reviews on the page
+     * @param after the next cursor of the previous page, or none for the first page
+     * @param deadline when the caller stops waiting, set from the X-Request-Timeout header if present
+     * @param timing the time spent per step, if the Server-Timing header is enabled
+     * @return a page of the reviews of the product, sorted by review id
+     */
+    @GetMapping(
+            value = "/review",
+            params = "limit",
+            produces = {"application/json", "application/x-jackson-smile"})
+    CursorPage<Review> getReviewPage(
+        @RequestParam(value = "productId", required = true) int productId,
+        @RequestParam(value = "limit") int limit,
+        @RequestParam(value = "after", required = false) String after,
+        @RequestAttribute(name = Deadline.ATTRIBUTE, required = false) Deadline deadline,
+        @RequestAttribute(name = ServerTiming.ATTRIBUTE, required = false) ServerTiming timing);
+
+    /**
+     * Sample usage: "curl -N -H 'Accept: application/x-ndjson' $HOST:$PORT/review?productId=1".
+     *
+     * @param productId Id of the product
+     * @return the reviews of the product, one per line, read from a database cursor and written
+     *         as they are read, so that the memory used does not grow with the result size
+     */
+    @GetMapping(
+            value = "/review",
+            produces = "application/x-ndjson")
+    Flux<Review> streamReviews(@RequestParam(value = "productId", required = true) int productId);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/review?productIds=1,2,3".
+     *
+     * @param productIds Ids of the products
+     * @param deadline when the caller stops waiting, set from the X-Request-Timeout header if present
+     * @param timing the time spent per step, if the Server-Timing header is enabled
+     * @return the reviews of all the products, sorted by product id so that the reviews of a
+     *         product are grouped together
+     */
+    @GetMapping(
+            value = "/review",
+            params = "productIds",
+            produces = {"application/json", "application/x-jackson-smile"})
+    List<Review> getReviews(
+        @RequestParam(value = "productIds") List<Integer> productIds,
+        @RequestAttribute(name = Deadline.ATTRIBUTE, required = false) Deadline deadline,
+        @RequestAttribute(name = ServerTiming.ATTRIBUTE, required = false) ServerTiming timing);
 
     /**
      * Sample usage: "curl -X DELETE $HOST:$PORT/review?productId=1".
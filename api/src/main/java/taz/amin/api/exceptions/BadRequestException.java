@@ -1,17 +1,19 @@
 package taz.amin.api.exceptions;
 
-public class BadRequestException  extends RuntimeException {
-    public BadRequestException() {}
+public class BadRequestException extends RuntimeException {
+    public BadRequestException() {
+        super(null, null, false, false);
+    }
 
     public BadRequestException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 
     public BadRequestException(String message, Throwable cause) {
-        super(message, cause);
+        super(message, cause, false, false);
     }
 
     public BadRequestException(Throwable cause) {
-        super(cause);
+        super((cause == null) ? null : cause.toString(), cause, false, false);
     }
 }
@@ -0,0 +1,19 @@
+package taz.amin.api.exceptions;
+
+public class DeadlineExceededException extends RuntimeException {
+    public DeadlineExceededException() {
+        super(null, null, false, false);
+    }
+
+    public DeadlineExceededException(String message) {
+        super(message, null, false, false);
+    }
+
+    public DeadlineExceededException(String message, Throwable cause) {
+        super(message, cause, false, false);
+    }
+
+    public DeadlineExceededException(Throwable cause) {
+        super((cause == null) ? null : cause.toString(), cause, false, false);
+    }
+}
@@ -1,17 +1,19 @@
 package taz.amin.api.exceptions;
 
 public class InvalidInputException extends RuntimeException {
-    public InvalidInputException() {}
+    public InvalidInputException() {
+        super(null, null, false, false);
+    }
 
     public InvalidInputException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 
     public InvalidInputException(String message, Throwable cause) {
-        super(message, cause);
+        super(message, cause, false, false);
     }
 
     public InvalidInputException(Throwable cause) {
-        super(cause);
+        super((cause == null) ? null : cause.toString(), cause, false, false);
     }
 }
@@ -1,17 +1,19 @@
 package taz.amin.api.exceptions;
 
 public class NotFoundException extends RuntimeException {
-    public NotFoundException() {}
+    public NotFoundException() {
+        super(null, null, false, false);
+    }
 
     public NotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 
     public NotFoundException(String message, Throwable cause) {
-        super(message, cause);
+        super(message, cause, false, false);
     }
 
     public NotFoundException(Throwable cause) {
-        super(cause);
+        super((cause == null) ? null : cause.toString(), cause, false, false);
     }
 }
@@ -0,0 +1,19 @@
+package taz.amin.api.exceptions;
+
+public class ServiceUnavailableException extends RuntimeException {
+    public ServiceUnavailableException() {
+        super(null, null, false, false);
+    }
+
+    public ServiceUnavailableException(String message) {
+        super(message, null, false, false);
+    }
+
+    public ServiceUnavailableException(String message, Throwable cause) {
+        super(message, cause, false, false);
+    }
+
+    public ServiceUnavailableException(Throwable cause) {
+        super((cause == null) ? null : cause.toString(), cause, false, false);
+    }
+}
@@ -0,0 +1,92 @@
+package taz.amin.microservices.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import taz.amin.api.exceptions.NotFoundException;
+import taz.amin.microservices.core.composite.product.services.DownstreamWebClientFactory;
+import taz.amin.util.http.GlobalControllerExceptionHandler;
+import taz.amin.util.http.HttpErrorInfo;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The error path of a lookup of a product that does not exist: the core service creates the
+ * exception, handles it and encodes the error body, and the composite decodes the message from it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ErrorPathBenchmark {
+    private final ObjectMapper json = Jackson2ObjectMapperBuilder.json().build();
+    private final GlobalControllerExceptionHandler handler = new GlobalControllerExceptionHandler();
+    private final ServerHttpRequest request = MockServerHttpRequest.get("/product/13").build();
+
+    private byte[] errorBody;
+
+    @Setup
+    public void setup() throws IOException {
+        errorBody = json.writeValueAsBytes(new HttpErrorInfo(HttpStatus.NOT_FOUND, "/product/13", "No product found for productId: 13"));
+    }
+
+    /**
+     * How deep in the stack the exceptions are created; a handler of a WebFlux request is some hundred frames deep.
+     */
+    @State(Scope.Benchmark)
+    public static class Stack {
+        @Param({"10", "100", "200"})
+        private int depth;
+    }
+
+    /**
+     * How the API exceptions were created before they stopped capturing a stack trace, for comparison.
+     */
+    @Benchmark
+    public RuntimeException createStackfulException(Stack stack) {
+        return createAtDepth(stack.depth, true);
+    }
+
+    @Benchmark
+    public RuntimeException createStacklessException(Stack stack) {
+        return createAtDepth(stack.depth, false);
+    }
+
+    @Benchmark
+    public byte[] handleNotFound() throws IOException {
+        NotFoundException ex = new NotFoundException("No product found for productId: 13");
+        return json.writeValueAsBytes(handler.handleNotFoundExceptions(request, ex));
+    }
+
+    @Benchmark
+    public String decodeErrorMessage() throws IOException {
+        return json.readValue(errorBody, DownstreamWebClientFactory.ErrorBody.class).getMessage();
+    }
+
+    /**
+     * How the error body was decoded before only its message was, for comparison.
+     */
+    @Benchmark
+    public String decodeErrorInfo() throws IOException {
+        return json.readValue(errorBody, HttpErrorInfo.class).getMessage();
+    }
+
+    private static RuntimeException createAtDepth(int depth, boolean stackful) {
+        if (depth > 0) {
+            return createAtDepth(depth - 1, stackful);
+        }
+        return stackful
+                ? new RuntimeException("No product found for productId: 13")
+                : new NotFoundException("No product found for productId: 13");
+    }
+}
@@ -0,0 +1,54 @@
+package taz.amin.microservices.benchmarks;
+
+import taz.amin.api.composite.product.ProductAggregate;
+import taz.amin.api.composite.product.RecommendationSummary;
+import taz.amin.api.composite.product.ReviewSummary;
+import taz.amin.api.composite.product.ServiceAddresses;
+import taz.amin.api.core.product.Product;
+import taz.amin.api.core.recommendation.Recommendation;
+import taz.amin.api.core.review.Review;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test data shared by the benchmarks, sized like real responses.
+ */
+public final class Fixtures {
+    public static final int PRODUCT_ID = 1;
+    public static final String SERVICE_ADDRESS = "product-composite-6d9cbd5f7b-x2k4p/10.1.0.17:8080";
+
+    private Fixtures() {
+    }
+
+    public static Product product() {
+        return new Product(PRODUCT_ID, "Product name 1", 120, SERVICE_ADDRESS);
+    }
+
+    public static List<Recommendation> recommendations(int count) {
+        List<Recommendation> recommendations = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            recommendations.add(new Recommendation(PRODUCT_ID, i, "Author " + i, i % 5, "Recommendation content " + i, SERVICE_ADDRESS));
+        }
+        return recommendations;
+    }
+
+    public static List<Review> reviews(int count) {
+        List<Review> reviews = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            reviews.add(new Review(PRODUCT_ID, i, "Author " + i, "Subject " + i, "Review content " + i, SERVICE_ADDRESS));
+        }
+        return reviews;
+    }
+
+    public static ProductAggregate productAggregate(int count) {
+        List<RecommendationSummary> recommendations = recommendations(count).stream()
+                .map(r -> new RecommendationSummary(r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent()))
+                .toList();
+        List<ReviewSummary> reviews = reviews(count).stream()
+                .map(r -> new ReviewSummary(r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent()))
+                .toList();
+        ServiceAddresses addresses = new ServiceAddresses(SERVICE_ADDRESS, SERVICE_ADDRESS, SERVICE_ADDRESS, SERVICE_ADDRESS);
+        return new ProductAggregate(PRODUCT_ID, "Product name 1", 120, recommendations, reviews, addresses);
+    }
+}
@@ -0,0 +1,112 @@
+package taz.amin.microservices.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import taz.amin.api.composite.product.ProductAggregate;
+import taz.amin.api.core.recommendation.Recommendation;
+import taz.amin.api.core.review.Review;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding the response bodies, as JSON to the clients of the composite and as Smile
+ * between the composite and the core services. The object mappers are configured the way Spring
+ * Boot configures them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JacksonBenchmark {
+    private static final TypeReference<List<Recommendation>> RECOMMENDATIONS = new TypeReference<>() {};
+    private static final TypeReference<List<Review>> REVIEWS = new TypeReference<>() {};
+
+    private final ObjectMapper json = Jackson2ObjectMapperBuilder.json().build();
+    private final ObjectMapper smile = Jackson2ObjectMapperBuilder.smile().build();
+
+    @Param({"1", "10", "100"})
+    private int size;
+
+    private ProductAggregate productAggregate;
+    private List<Recommendation> recommendations;
+    private List<Review> reviews;
+
+    private byte[] productAggregateJson;
+    private byte[] recommendationsJson;
+    private byte[] recommendationsSmile;
+    private byte[] reviewsJson;
+    private byte[] reviewsSmile;
+
+    @Setup
+    public void setup() throws IOException {
+        productAggregate = Fixtures.productAggregate(size);
+        recommendations = Fixtures.recommendations(size);
+        reviews = Fixtures.reviews(size);
+
+        productAggregateJson = json.writeValueAsBytes(productAggregate);
+        recommendationsJson = json.writeValueAsBytes(recommendations);
+        recommendationsSmile = smile.writeValueAsBytes(recommendations);
+        reviewsJson = json.writeValueAsBytes(reviews);
+        reviewsSmile = smile.writeValueAsBytes(reviews);
+    }
+
+    @Benchmark
+    public byte[] writeProductAggregateJson() throws IOException {
+        return json.writeValueAsBytes(productAggregate);
+    }
+
+    @Benchmark
+    public ProductAggregate readProductAggregateJson() throws IOException {
+        return json.readValue(productAggregateJson, ProductAggregate.class);
+    }
+
+    @Benchmark
+    public byte[] writeRecommendationsJson() throws IOException {
+        return json.writeValueAsBytes(recommendations);
+    }
+
+    @Benchmark
+    public byte[] writeRecommendationsSmile() throws IOException {
+        return smile.writeValueAsBytes(recommendations);
+    }
+
+    @Benchmark
+    public List<Recommendation> readRecommendationsJson() throws IOException {
+        return json.readValue(recommendationsJson, RECOMMENDATIONS);
+    }
+
+    @Benchmark
+    public List<Recommendation> readRecommendationsSmile() throws IOException {
+        return smile.readValue(recommendationsSmile, RECOMMENDATIONS);
+    }
+
+    @Benchmark
+    public byte[] writeReviewsJson() throws IOException {
+        return json.writeValueAsBytes(reviews);
+    }
+
+    @Benchmark
+    public byte[] writeReviewsSmile() throws IOException {
+        return smile.writeValueAsBytes(reviews);
+    }
+
+    @Benchmark
+    public List<Review> readReviewsJson() throws IOException {
+        return json.readValue(reviewsJson, REVIEWS);
+    }
+
+    @Benchmark
+    public List<Review> readReviewsSmile() throws IOException {
+        return smile.readValue(reviewsSmile, REVIEWS);
+    }
+}
@@ -0,0 +1,79 @@
+package taz.amin.microservices.benchmarks;
+
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import taz.amin.api.core.product.Product;
+import taz.amin.api.core.recommendation.Recommendation;
+import taz.amin.api.core.review.Review;
+import taz.amin.microservices.core.product.persistence.ProductEntity;
+import taz.amin.microservices.core.product.services.ProductMapper;
+import taz.amin.microservices.core.recommendation.persistence.RecommendationEntity;
+import taz.amin.microservices.core.recommendation.services.RecommendationMapper;
+import taz.amin.microservices.core.review.persistence.ReviewEntity;
+import taz.amin.microservices.core.review.services.ReviewMapper;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The MapStruct mappers between the API models and the entities, as used on every lookup and write
+ * of the core services.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MapperBenchmark {
+    private final ProductMapper productMapper = Mappers.getMapper(ProductMapper.class);
+    private final RecommendationMapper recommendationMapper = Mappers.getMapper(RecommendationMapper.class);
+    private final ReviewMapper reviewMapper = Mappers.getMapper(ReviewMapper.class);
+
+    @Param({"1", "10", "100"})
+    private int size;
+
+    private ProductEntity productEntity;
+    private List<RecommendationEntity> recommendationEntities;
+    private List<ReviewEntity> reviewEntities;
+    private List<Recommendation> recommendations;
+    private List<Review> reviews;
+
+    @Setup
+    public void setup() {
+        productEntity = productMapper.apiToEntity(Fixtures.product());
+        recommendations = Fixtures.recommendations(size);
+        reviews = Fixtures.reviews(size);
+        recommendationEntities = recommendationMapper.apiListToEntityList(recommendations);
+        reviewEntities = reviewMapper.apiListToEntityList(reviews);
+    }
+
+    @Benchmark
+    public Product productEntityToApi() {
+        return productMapper.entityToApi(productEntity);
+    }
+
+    @Benchmark
+    public List<Recommendation> recommendationEntityListToApiList() {
+        return recommendationMapper.entityListToApiList(recommendationEntities);
+    }
+
+    @Benchmark
+    public List<RecommendationEntity> recommendationApiListToEntityList() {
+        return recommendationMapper.apiListToEntityList(recommendations);
+    }
+
+    @Benchmark
+    public List<Review> reviewEntityListToApiList() {
+        return reviewMapper.entityListToApiList(reviewEntities);
+    }
+
+    @Benchmark
+    public List<ReviewEntity> reviewApiListToEntityList() {
+        return reviewMapper.apiListToEntityList(reviews);
+    }
+}
@@ -0,0 +1,60 @@
+package taz.amin.microservices.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import taz.amin.api.core.product.Product;
+import taz.amin.api.core.recommendation.Recommendation;
+import taz.amin.api.core.review.Review;
+import taz.amin.microservices.core.composite.product.services.ProductAggregateAssembler;
+import taz.amin.microservices.core.composite.product.services.TaggedProductAggregate;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static taz.amin.api.composite.product.ProductAggregateSection.PRODUCT;
+import static taz.amin.api.composite.product.ProductAggregateSection.RECOMMENDATIONS;
+import static taz.amin.api.composite.product.ProductAggregateSection.REVIEWS;
+
+/**
+ * Assembling and tagging the composite view of a product from its parts, done on every composite
+ * lookup that is not served from the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProductAggregateBenchmark {
+    private static final Set<String> ALL_PARTS = Set.of(PRODUCT, RECOMMENDATIONS, REVIEWS);
+
+    @Param({"0", "10", "100"})
+    private int size;
+
+    private Product product;
+    private List<Recommendation> recommendations;
+    private List<Review> reviews;
+
+    @Setup
+    public void setup() {
+        product = Fixtures.product();
+        recommendations = Fixtures.recommendations(size);
+        reviews = Fixtures.reviews(size);
+    }
+
+    @Benchmark
+    public TaggedProductAggregate createProductAggregate() {
+        return ProductAggregateAssembler.assemble(
+                product, recommendations, reviews, Fixtures.SERVICE_ADDRESS, List.of(), ALL_PARTS, 0);
+    }
+
+    @Benchmark
+    public TaggedProductAggregate createProductAggregateWithMissingParts() {
+        return ProductAggregateAssembler.assemble(
+                product, null, null, Fixtures.SERVICE_ADDRESS, List.of(), ALL_PARTS, 0);
+    }
+}
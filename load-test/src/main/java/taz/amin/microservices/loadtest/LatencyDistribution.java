@@ -0,0 +1,111 @@
+package taz.amin.microservices.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The latency a stub service adds to each response, parsed from one of:
+ * - "none"
+ * - "fixed:5ms"
+ * - "uniform:2ms:10ms", between the two
+ * - "exponential:5ms", with the given mean
+ * - "lognormal:5ms:50ms", with the given median and 99th percentile, the usual long tail of a service
+ */
+public abstract class LatencyDistribution {
+    // The 99th percentile of the standard normal distribution
+    private static final double Z_99 = 2.326;
+
+    private final String spec;
+
+    private LatencyDistribution(String spec) {
+        this.spec = spec;
+    }
+
+    /**
+     * @return the latency of the next response, in nanoseconds
+     */
+    public abstract long sampleNanos();
+
+    public Duration sample() {
+        return Duration.ofNanos(sampleNanos());
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+
+    public static LatencyDistribution parse(String spec) {
+        String[] parts = spec.split(":");
+        try {
+            switch (parts[0]) {
+                case "none":
+                    return fixed(spec, 0);
+                case "fixed":
+                    return fixed(spec, nanos(parts[1]));
+                case "uniform":
+                    return uniform(spec, nanos(parts[1]), nanos(parts[2]));
+                case "exponential":
+                    return exponential(spec, nanos(parts[1]));
+                case "lognormal":
+                    return lognormal(spec, nanos(parts[1]), nanos(parts[2]));
+                default:
+                    break;
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException ex) {
+            // Falls through
+        }
+        throw new IllegalArgumentException("Invalid latency: " + spec
+                + ", must be one of: none, fixed:<d>, uniform:<min>:<max>, exponential:<mean>, lognormal:<median>:<p99>");
+    }
+
+    private static long nanos(String duration) {
+        return DurationStyle.detectAndParse(duration).toNanos();
+    }
+
+    private static LatencyDistribution fixed(String spec, long nanos) {
+        return new LatencyDistribution(spec) {
+            @Override
+            public long sampleNanos() {
+                return nanos;
+            }
+        };
+    }
+
+    private static LatencyDistribution uniform(String spec, long min, long max) {
+        if (max < min) {
+            throw new IllegalArgumentException("max < min");
+        }
+        return new LatencyDistribution(spec) {
+            @Override
+            public long sampleNanos() {
+                return (min == max) ? min : ThreadLocalRandom.current().nextLong(min, max + 1);
+            }
+        };
+    }
+
+    private static LatencyDistribution exponential(String spec, long mean) {
+        return new LatencyDistribution(spec) {
+            @Override
+            public long sampleNanos() {
+                return (long) (-mean * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+            }
+        };
+    }
+
+    private static LatencyDistribution lognormal(String spec, long median, long p99) {
+        if (median <= 0 || p99 < median) {
+            throw new IllegalArgumentException("median <= 0 or p99 < median");
+        }
+        double mu = Math.log(median);
+        double sigma = (Math.log(p99) - mu) / Z_99;
+        return new LatencyDistribution(spec) {
+            @Override
+            public long sampleNanos() {
+                return (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+            }
+        };
+    }
+}
@@ -0,0 +1,222 @@
+package taz.amin.microservices.loadtest;
+
+import io.netty.channel.ChannelOption;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import taz.amin.microservices.core.composite.product.ProductCompositeServiceApplication;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Finds the saturation point of the composite: runs an open-loop load of GET /product-composite
+ * requests at a series of increasing rates, against stub core services with configurable latency,
+ * and reports the achieved rate and the latency percentiles of each step.
+ *
+ * Unless a target is given, the composite is started in this process on a free port, with its
+ * cache disabled so that every request reaches the stubs. Options, all of them optional:
+ *
+ * --target=http://localhost:8080      a running composite, that calls the stubs on ports 7001-7003
+ * --rates=50,100,200,400              requests per second of each step
+ * --duration=20s --warmup=5s          measured time and unmeasured warm up of each step
+ * --connections=500                   connections to the composite
+ * --max-in-flight=2000                requests waiting for a response before new ones are dropped
+ * --timeout=10s                       response timeout
+ * --products=1000                     product ids are drawn from 1 to this
+ * --product-latency=lognormal:2ms:20ms, --recommendation-latency, --review-latency
+ *                                     see {@link LatencyDistribution}
+ * --recommendations=10 --reviews=10   items per product
+ * --content-size=100                  characters of the content of each recommendation and review
+ * --output=build/load-test            saturation.csv and one .hgrm percentile file per step
+ * --composite.<property>=<value>      properties of the in-process composite, e.g.
+ *                                     --composite.app.product-composite.cache.enabled=true
+ */
+public class LoadTest {
+    private static final String COMPOSITE_PREFIX = "composite.";
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parse(args);
+
+        List<Double> rates = new ArrayList<>();
+        for (String rate : option(options, "rates", "50,100,200,400").split(",")) {
+            rates.add(Double.parseDouble(rate.trim()));
+        }
+        Duration duration = duration(options, "duration", "20s");
+        Duration warmup = duration(options, "warmup", "5s");
+        Duration timeout = duration(options, "timeout", "10s");
+        int connections = Integer.parseInt(option(options, "connections", "500"));
+        int maxInFlight = Integer.parseInt(option(options, "max-in-flight", "2000"));
+        int products = Integer.parseInt(option(options, "products", "1000"));
+        Path output = Path.of(option(options, "output", "build/load-test"));
+        String target = options.get("target");
+
+        int[] stubPorts = (target != null) ? new int[] {7001, 7002, 7003} : new int[] {0, 0, 0};
+        try (StubCoreServices stubs = new StubCoreServices(
+                stubPorts,
+                LatencyDistribution.parse(option(options, "product-latency", "lognormal:2ms:20ms")),
+                LatencyDistribution.parse(option(options, "recommendation-latency", "lognormal:2ms:20ms")),
+                LatencyDistribution.parse(option(options, "review-latency", "lognormal:2ms:20ms")),
+                Integer.parseInt(option(options, "recommendations", "10")),
+                Integer.parseInt(option(options, "reviews", "10")),
+                Integer.parseInt(option(options, "content-size", "100")))) {
+
+            ConfigurableApplicationContext composite = null;
+            if (target == null) {
+                composite = startComposite(stubs, options);
+                target = "http://localhost:" + composite.getEnvironment().getProperty("local.server.port");
+            }
+
+            try {
+                List<OpenLoopGenerator.Result> results = run(target, rates, warmup, duration, timeout, connections, maxInFlight, products);
+                report(results, output, System.out);
+            } finally {
+                if (composite != null) {
+                    composite.close();
+                }
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext startComposite(StubCoreServices stubs, Map<String, String> options) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("server.port", 0);
+        properties.put("app.product-service.port", stubs.getProductServicePort());
+        properties.put("app.recommendation-service.port", stubs.getRecommendationServicePort());
+        properties.put("app.review-service.port", stubs.getReviewServicePort());
+        // The stubs only speak uncompressed JSON
+        for (String service : List.of("product-service", "recommendation-service", "review-service")) {
+            properties.put("app." + service + ".wire-format", "json");
+            properties.put("app." + service + ".compression", false);
+        }
+        properties.put("app.product-composite.cache.enabled", false);
+        properties.put("app.product-composite.stale.enabled", false);
+        properties.put("logging.level.taz.amin", "WARN");
+        properties.put("spring.main.banner-mode", "off");
+        options.forEach((name, value) -> {
+            if (name.startsWith(COMPOSITE_PREFIX)) {
+                properties.put(name.substring(COMPOSITE_PREFIX.length()), value);
+            }
+        });
+
+        // As command line arguments, that take precedence over the application.yml of the composite
+        return new SpringApplicationBuilder(ProductCompositeServiceApplication.class)
+                .run(properties.entrySet().stream()
+                        .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                        .toArray(String[]::new));
+    }
+
+    private static List<OpenLoopGenerator.Result> run(String target, List<Double> rates, Duration warmup, Duration duration,
+                                                      Duration timeout, int connections, int maxInFlight, int products) {
+
+        ConnectionProvider provider = ConnectionProvider.builder("load-test")
+                .maxConnections(connections)
+                .pendingAcquireMaxCount(-1)
+                .pendingAcquireTimeout(timeout)
+                .build();
+        HttpClient client = HttpClient.create(provider)
+                .baseUrl(target)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) timeout.toMillis())
+                .responseTimeout(timeout);
+
+        OpenLoopGenerator generator = new OpenLoopGenerator(
+                () -> client.get()
+                        .uri("/product-composite/" + ThreadLocalRandom.current().nextInt(1, products + 1))
+                        .responseSingle((response, body) -> body.then(Mono.just(response.status().code())))
+                        .defaultIfEmpty(0),
+                maxInFlight,
+                timeout);
+
+        List<OpenLoopGenerator.Result> results = new ArrayList<>();
+        try {
+            for (double rate : rates) {
+                System.out.printf(Locale.ROOT, "Running %.0f req/s for %s after %s of warm up%n", rate, duration, warmup);
+                results.add(generator.run(rate, warmup, duration));
+            }
+        } finally {
+            provider.disposeLater().block();
+        }
+        return results;
+    }
+
+    private static void report(List<OpenLoopGenerator.Result> results, Path output, PrintStream out) throws IOException {
+        Files.createDirectories(output);
+
+        String header = String.format(Locale.ROOT, "%10s %10s %9s %9s %9s %9s %9s %8s %8s %8s %8s %s",
+                "target/s", "achieved/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms",
+                "ok", "503", "failed", "dropped", "saturated");
+        out.println();
+        out.println(header);
+
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(output.resolve("saturation.csv")))) {
+            csv.println("target_rate,achieved_rate,p50_ms,p90_ms,p99_ms,p999_ms,max_ms,ok,rejected,failed,dropped,unfinished,saturated");
+            for (OpenLoopGenerator.Result result : results) {
+                Histogram latency = result.getLatency();
+                double[] percentiles = {
+                        millis(latency.getValueAtPercentile(50)),
+                        millis(latency.getValueAtPercentile(90)),
+                        millis(latency.getValueAtPercentile(99)),
+                        millis(latency.getValueAtPercentile(99.9)),
+                        millis(latency.getMaxValue())
+                };
+
+                out.println(String.format(Locale.ROOT, "%10.0f %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f %8d %8d %8d %8d %s",
+                        result.getTargetRate(), result.getAchievedRate(),
+                        percentiles[0], percentiles[1], percentiles[2], percentiles[3], percentiles[4],
+                        result.getOk(), result.getRejected(), result.getFailed(), result.getDropped(),
+                        result.isSaturated() ? "yes" : ""));
+                csv.println(String.format(Locale.ROOT, "%.0f,%.1f,%.3f,%.3f,%.3f,%.3f,%.3f,%d,%d,%d,%d,%d,%b",
+                        result.getTargetRate(), result.getAchievedRate(),
+                        percentiles[0], percentiles[1], percentiles[2], percentiles[3], percentiles[4],
+                        result.getOk(), result.getRejected(), result.getFailed(), result.getDropped(),
+                        result.getUnfinished(), result.isSaturated()));
+
+                Path hgrm = output.resolve(String.format(Locale.ROOT, "latency-%.0f.hgrm", result.getTargetRate()));
+                try (PrintStream percentileFile = new PrintStream(Files.newOutputStream(hgrm))) {
+                    // In milliseconds, as the HdrHistogram plotter expects
+                    latency.outputPercentileDistribution(percentileFile, 1_000_000.0);
+                }
+            }
+        }
+        out.println();
+        out.println("Written to " + output.toAbsolutePath());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Invalid option: " + arg + ", must be --<name>=<value>");
+            }
+            int separator = arg.indexOf('=');
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private static Duration duration(Map<String, String> options, String name, String defaultValue) {
+        return DurationStyle.detectAndParse(option(options, name, defaultValue));
+    }
+}
@@ -0,0 +1,232 @@
+package taz.amin.microservices.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Sends requests at a fixed rate, whether or not the earlier ones have been answered, as real
+ * clients do, instead of waiting for a response before sending the next request.
+ *
+ * The latency of a request is measured from the time it was scheduled to be sent, not from when it
+ * was actually sent. So when the generator falls behind, or the connections are all busy, the
+ * time the request had to wait counts as well, which corrects for coordinated omission.
+ *
+ * Only the latency of the successful (2xx) responses is recorded, 503 responses are counted as
+ * rejected and any other response or error as failed. Requests that could not be sent since
+ * maxInFlight requests were waiting for a response already are counted as dropped, and those
+ * without a response when the run ended as unfinished. Both are recorded as well, with the time
+ * from when they were scheduled until the run ended, as they would have taken at least that long.
+ * Leaving them out would hide the slowest requests exactly when the service is overloaded.
+ */
+public class OpenLoopGenerator {
+    // Parking for less than this is not precise, the generator spins instead
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Supplier<Mono<Integer>> request;
+    private final int maxInFlight;
+    private final Duration drainTimeout;
+
+    /**
+     * @param request sends one request when subscribed to, and emits the status of its response
+     */
+    public OpenLoopGenerator(Supplier<Mono<Integer>> request, int maxInFlight, Duration drainTimeout) {
+        this.request = request;
+        this.maxInFlight = maxInFlight;
+        this.drainTimeout = drainTimeout;
+    }
+
+    /**
+     * Runs at the given rate for warmup and then duration. Only the requests scheduled after the
+     * warmup are measured, and the run ends when they have all completed, or drainTimeout after
+     * the last one was scheduled.
+     */
+    public Result run(double ratePerSecond, Duration warmup, Duration duration) {
+        Recorder recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, 3);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicLong ok = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        // The measured requests that were sent and not answered yet, by the time they were scheduled for
+        Set<Long> pending = ConcurrentHashMap.newKeySet();
+        List<Long> dropped = new ArrayList<>();
+        long scheduled = 0;
+
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+
+        for (long i = 0; ; i++) {
+            long intended = start + (long) (i * intervalNanos);
+            if (intended - end >= 0) {
+                break;
+            }
+            waitUntil(intended);
+
+            boolean measured = intended - measureFrom >= 0;
+            if (measured) {
+                scheduled++;
+            }
+            if (inFlight.get() >= maxInFlight) {
+                if (measured) {
+                    dropped.add(intended);
+                }
+                continue;
+            }
+
+            if (measured) {
+                pending.add(intended);
+            }
+            inFlight.incrementAndGet();
+            request.get()
+                    .doFinally(signal -> inFlight.decrementAndGet())
+                    .subscribe(
+                            status -> {
+                                // Not if it was recorded as unfinished already
+                                if (!measured || !pending.remove(intended)) {
+                                    return;
+                                }
+                                if (status >= 200 && status < 300) {
+                                    recorder.recordValue(latency(intended, System.nanoTime()));
+                                    ok.incrementAndGet();
+                                } else if (status == 503) {
+                                    rejected.incrementAndGet();
+                                } else {
+                                    failed.incrementAndGet();
+                                }
+                            },
+                            error -> {
+                                if (measured && pending.remove(intended)) {
+                                    failed.incrementAndGet();
+                                }
+                            });
+        }
+
+        long drainUntil = System.nanoTime() + drainTimeout.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() - drainUntil < 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        long ended = System.nanoTime();
+
+        long unfinished = 0;
+        for (Long intended : pending) {
+            // Unless its response arrives just now
+            if (pending.remove(intended)) {
+                recorder.recordValue(latency(intended, ended));
+                unfinished++;
+            }
+        }
+        for (Long intended : dropped) {
+            recorder.recordValue(latency(intended, ended));
+        }
+
+        return new Result(ratePerSecond, recorder.getIntervalHistogram(), scheduled, ok.get(), rejected.get(), failed.get(),
+                dropped.size(), unfinished, Duration.ofNanos(Math.max(ended - measureFrom, duration.toNanos())));
+    }
+
+    private static long latency(long intended, long now) {
+        return Math.min(now - intended, HIGHEST_TRACKABLE_NANOS);
+    }
+
+    private static void waitUntil(long nanoTime) {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    public static class Result {
+        private final double targetRate;
+        private final Histogram latency;
+        private final long scheduled;
+        private final long ok;
+        private final long rejected;
+        private final long failed;
+        private final long dropped;
+        private final long unfinished;
+        private final Duration elapsed;
+
+        public Result(double targetRate, Histogram latency, long scheduled, long ok, long rejected, long failed,
+                      long dropped, long unfinished, Duration elapsed) {
+            this.targetRate = targetRate;
+            this.latency = latency;
+            this.scheduled = scheduled;
+            this.ok = ok;
+            this.rejected = rejected;
+            this.failed = failed;
+            this.dropped = dropped;
+            this.unfinished = unfinished;
+            this.elapsed = elapsed;
+        }
+
+        public double getTargetRate() {
+            return targetRate;
+        }
+
+        /**
+         * @return the successful responses per second
+         */
+        public double getAchievedRate() {
+            return ok / (elapsed.toNanos() / 1e9);
+        }
+
+        /**
+         * @return the latency of the successful responses, and of the dropped and unfinished requests
+         * until the run ended, in nanoseconds
+         */
+        public Histogram getLatency() {
+            return latency;
+        }
+
+        public long getScheduled() {
+            return scheduled;
+        }
+
+        public long getOk() {
+            return ok;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * @return the measured requests without a response when the run ended
+         */
+        public long getUnfinished() {
+            return unfinished;
+        }
+
+        /**
+         * @return true if less than 95% of the scheduled requests were answered successfully
+         */
+        public boolean isSaturated() {
+            return ok < scheduled * 0.95;
+        }
+    }
+}
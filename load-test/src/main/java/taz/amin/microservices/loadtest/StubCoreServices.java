@@ -0,0 +1,153 @@
+package taz.amin.microservices.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import taz.amin.api.core.product.Product;
+import taz.amin.api.core.recommendation.Recommendation;
+import taz.amin.api.core.review.Review;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * In-process stand-ins for product-service, recommendation-service and review-service, that answer
+ * the lookups of the composite, single and batched, after a latency drawn from a distribution.
+ *
+ * Every product id exists, with the configured number of recommendations and reviews, whose
+ * content fields are contentSize characters long. Writes are not supported.
+ */
+public class StubCoreServices implements AutoCloseable {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final int recommendationCount;
+    private final int reviewCount;
+    private final String content;
+
+    private final DisposableServer productService;
+    private final DisposableServer recommendationService;
+    private final DisposableServer reviewService;
+
+    /**
+     * @param ports the ports of the product, recommendation and review service, 0 for any free port
+     */
+    public StubCoreServices(
+            int[] ports,
+            LatencyDistribution productLatency,
+            LatencyDistribution recommendationLatency,
+            LatencyDistribution reviewLatency,
+            int recommendationCount,
+            int reviewCount,
+            int contentSize) {
+
+        this.recommendationCount = recommendationCount;
+        this.reviewCount = reviewCount;
+        this.content = "x".repeat(contentSize);
+
+        productService = HttpServer.create()
+                .port(ports[0])
+                .route(routes -> routes
+                        .get("/product/{productId}", (request, response) -> send(response, productLatency,
+                                product(Integer.parseInt(request.param("productId")))))
+                        .get("/product", (request, response) -> send(response, productLatency,
+                                items(productIds(request), productId -> List.of(product(productId))))))
+                .bindNow();
+        recommendationService = HttpServer.create()
+                .port(ports[1])
+                .route(routes -> routes
+                        .get("/recommendation", (request, response) -> send(response, recommendationLatency,
+                                items(productIds(request), this::recommendations))))
+                .bindNow();
+        reviewService = HttpServer.create()
+                .port(ports[2])
+                .route(routes -> routes
+                        .get("/review", (request, response) -> send(response, reviewLatency,
+                                items(productIds(request), this::reviews))))
+                .bindNow();
+    }
+
+    public int getProductServicePort() {
+        return productService.port();
+    }
+
+    public int getRecommendationServicePort() {
+        return recommendationService.port();
+    }
+
+    public int getReviewServicePort() {
+        return reviewService.port();
+    }
+
+    @Override
+    public void close() {
+        productService.disposeNow();
+        recommendationService.disposeNow();
+        reviewService.disposeNow();
+    }
+
+    private Publisher<Void> send(HttpServerResponse response, LatencyDistribution latency, Object body) {
+        byte[] json;
+        try {
+            json = mapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException ex) {
+            return response.status(HttpResponseStatus.INTERNAL_SERVER_ERROR).send();
+        }
+        return Mono.delay(latency.sample())
+                .then(response
+                        .header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                        .sendByteArray(Mono.just(json))
+                        .then());
+    }
+
+    /**
+     * @return the product ids of a lookup by "productId" or "productIds"
+     */
+    private static int[] productIds(HttpServerRequest request) {
+        QueryStringDecoder query = new QueryStringDecoder(request.uri());
+        List<String> productId = query.parameters().get("productId");
+        if (productId != null) {
+            return new int[] {Integer.parseInt(productId.get(0))};
+        }
+        return Arrays.stream(query.parameters().getOrDefault("productIds", List.of("")).get(0).split(","))
+                .filter(id -> !id.isEmpty())
+                .mapToInt(Integer::parseInt)
+                .toArray();
+    }
+
+    private static <T> List<T> items(int[] productIds, IntFunction<List<T>> itemsOf) {
+        List<T> items = new ArrayList<>();
+        for (int productId : productIds) {
+            items.addAll(itemsOf.apply(productId));
+        }
+        return items;
+    }
+
+    private Product product(int productId) {
+        return new Product(productId, "Product " + productId, productId % 100, "stub-product");
+    }
+
+    private List<Recommendation> recommendations(int productId) {
+        List<Recommendation> recommendations = new ArrayList<>(recommendationCount);
+        for (int i = 1; i <= recommendationCount; i++) {
+            recommendations.add(new Recommendation(productId, i, "Author " + i, i % 5, content, "stub-recommendation"));
+        }
+        return recommendations;
+    }
+
+    private List<Review> reviews(int productId) {
+        List<Review> reviews = new ArrayList<>(reviewCount);
+        for (int i = 1; i <= reviewCount; i++) {
+            reviews.add(new Review(productId, i, "Author " + i, "Subject " + i, content, "stub-review"));
+        }
+        return reviews;
+    }
+}
@@ -0,0 +1,46 @@
+package taz.amin.microservices.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyDistributionTests {
+
+	@Test
+	void fixedAndUniform() {
+		assertEquals(0, LatencyDistribution.parse("none").sampleNanos());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(5), LatencyDistribution.parse("fixed:5ms").sampleNanos());
+
+		LatencyDistribution uniform = LatencyDistribution.parse("uniform:2ms:4ms");
+		for (int i = 0; i < 1000; i++) {
+			long sample = uniform.sampleNanos();
+			assertTrue(sample >= TimeUnit.MILLISECONDS.toNanos(2) && sample <= TimeUnit.MILLISECONDS.toNanos(4));
+		}
+	}
+
+	@Test
+	void lognormalHasTheGivenMedianAndTail() {
+		LatencyDistribution lognormal = LatencyDistribution.parse("lognormal:5ms:50ms");
+		long[] samples = new long[100_000];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = lognormal.sampleNanos();
+		}
+		Arrays.sort(samples);
+
+		assertEquals(5.0, samples[samples.length / 2] / 1e6, 0.5);
+		assertEquals(50.0, samples[samples.length * 99 / 100] / 1e6, 5.0);
+	}
+
+	@Test
+	void invalidSpecsAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> LatencyDistribution.parse("gaussian:5ms"));
+		assertThrows(IllegalArgumentException.class, () -> LatencyDistribution.parse("uniform:5ms"));
+		assertThrows(IllegalArgumentException.class, () -> LatencyDistribution.parse("uniform:5ms:2ms"));
+		assertThrows(IllegalArgumentException.class, () -> LatencyDistribution.parse("fixed:soon"));
+	}
+}
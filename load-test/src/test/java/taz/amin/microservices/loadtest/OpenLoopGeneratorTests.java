@@ -0,0 +1,85 @@
+package taz.amin.microservices.loadtest;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenLoopGeneratorTests {
+
+	@Test
+	void latencyIncludesTheTimeARequestWasLateToBeSent() {
+		AtomicInteger calls = new AtomicInteger();
+		OpenLoopGenerator generator = new OpenLoopGenerator(() -> {
+			// The sender stalls once, as a closed-loop client waiting for a slow response would
+			if (calls.incrementAndGet() == 10) {
+				sleep(300);
+			}
+			return Mono.just(200);
+		}, 100, Duration.ofSeconds(1));
+
+		OpenLoopGenerator.Result result = generator.run(100, Duration.ZERO, Duration.ofSeconds(1));
+
+		assertEquals(100, result.getScheduled());
+		assertEquals(100, result.getOk());
+		assertTrue(result.getLatency().getMaxValue() >= TimeUnit.MILLISECONDS.toNanos(250));
+		// About 30 requests were due during the stall, a closed-loop client would only have recorded the one
+		assertTrue(result.getLatency().getValueAtPercentile(80) >= TimeUnit.MILLISECONDS.toNanos(50));
+		assertFalse(result.isSaturated());
+	}
+
+	@Test
+	void responsesAreCountedByOutcome() {
+		AtomicInteger calls = new AtomicInteger();
+		OpenLoopGenerator generator = new OpenLoopGenerator(() -> {
+			switch (calls.incrementAndGet() % 4) {
+				case 0:
+					return Mono.just(503);
+				case 1:
+					return Mono.just(500);
+				case 2:
+					return Mono.error(new IllegalStateException("Connection refused"));
+				default:
+					return Mono.just(200);
+			}
+		}, 100, Duration.ofSeconds(1));
+
+		OpenLoopGenerator.Result result = generator.run(200, Duration.ZERO, Duration.ofMillis(200));
+
+		assertEquals(40, result.getScheduled());
+		assertEquals(10, result.getOk());
+		assertEquals(10, result.getRejected());
+		assertEquals(20, result.getFailed());
+		assertEquals(10, result.getLatency().getTotalCount());
+		assertTrue(result.isSaturated());
+	}
+
+	@Test
+	void requestsAboveMaxInFlightAreDropped() {
+		OpenLoopGenerator generator = new OpenLoopGenerator(Mono::never, 5, Duration.ofMillis(100));
+
+		OpenLoopGenerator.Result result = generator.run(100, Duration.ZERO, Duration.ofMillis(200));
+
+		assertEquals(20, result.getScheduled());
+		assertEquals(15, result.getDropped());
+		assertEquals(5, result.getUnfinished());
+		assertEquals(0, result.getOk());
+		// Neither got a response, so they took at least until the drain timeout, after the last one was scheduled
+		assertEquals(20, result.getLatency().getTotalCount());
+		assertTrue(result.getLatency().getMinValue() >= TimeUnit.MILLISECONDS.toNanos(100));
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
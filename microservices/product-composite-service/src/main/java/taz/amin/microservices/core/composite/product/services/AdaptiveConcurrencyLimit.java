@@ -0,0 +1,112 @@
+package taz.amin.microservices.core.composite.product.services;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A limit on the number of requests handled at the same time, that follows the measured latency
+ * as in delay based congestion control: the latency of the recent requests is compared to the
+ * long term latency, and the limit shrinks by their ratio when requests start to queue up, and
+ * grows by queueSize while they do not.
+ *
+ * The long term latency slowly follows the recent one, so that a lasting change in latency, e.g.
+ * a slower downstream service, settles at a new limit. The limit is not grown while less than
+ * half of it is in use, since the latency then says nothing about a higher concurrency.
+ *
+ * Reads get the whole limit, while writes are only admitted up to writeShare of it, so when
+ * requests are shed the writes are shed first.
+ */
+public class AdaptiveConcurrencyLimit {
+    // Number of requests the recent and the long term latency are averaged over
+    private static final int SHORT_WINDOW = 10;
+    private static final int LONG_WINDOW = 600;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int queueSize;
+    private final double tolerance;
+    private final double smoothing;
+    private final double writeShare;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+    private double shortLatency;
+    private double longLatency;
+
+    /**
+     * @param tolerance how much higher the recent latency may be than the long term latency before the limit shrinks
+     * @param smoothing how much of a new limit is taken at once, between 0 and 1
+     */
+    public AdaptiveConcurrencyLimit(
+            int initialLimit,
+            int minLimit,
+            int maxLimit,
+            int queueSize,
+            double tolerance,
+            double smoothing,
+            double writeShare) {
+
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.queueSize = queueSize;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.writeShare = writeShare;
+    }
+
+    /**
+     * @return true if the request is admitted, it must then be released when done
+     */
+    public boolean tryAcquire(boolean write) {
+        int max = write ? Math.max(1, (int) (limit * writeShare)) : (int) limit;
+        while (true) {
+            int current = inFlight.get();
+            if (current >= max) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Adjusts the limit by the latency of a request, measured while inFlight requests were handled.
+     */
+    public synchronized void onSample(long latencyNanos, int inFlight) {
+        if (longLatency == 0) {
+            shortLatency = latencyNanos;
+            longLatency = latencyNanos;
+            return;
+        }
+
+        shortLatency += (latencyNanos - shortLatency) * 2 / (SHORT_WINDOW + 1);
+        longLatency += (shortLatency - longLatency) * 2 / (LONG_WINDOW + 1);
+
+        // After a lasting drop in latency, the long term latency catches up faster
+        if (longLatency / shortLatency > 2) {
+            longLatency *= 0.95;
+        }
+
+        if (inFlight < limit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longLatency / shortLatency));
+        double newLimit = limit * gradient + queueSize;
+        newLimit = limit * (1 - smoothing) + newLimit * smoothing;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,104 @@
+package taz.amin.microservices.core.composite.product.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+/**
+ * Limits the number of composite requests handled at the same time by an
+ * {@link AdaptiveConcurrencyLimit}, that moves with the time it takes to start responding.
+ *
+ * Requests above the limit are rejected at once with 503 and a Retry-After header, before they
+ * are decoded or call any downstream service, instead of queueing up behind the slow ones. GET
+ * requests take precedence over writes, that are shed first.
+ *
+ * Published metrics:
+ * - "composite.concurrency.limit": the current limit
+ * - "composite.concurrency.in-flight": requests being handled
+ * - "composite.concurrency.rejected": rejected requests, tagged with the priority, read or write
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ConcurrencyLimitWebFilter implements WebFilter {
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrencyLimitWebFilter.class);
+
+    private static final String PATH_PREFIX = "/product-composite";
+
+    private final boolean enabled;
+    private final String retryAfter;
+    private final AdaptiveConcurrencyLimit limit;
+    private final Counter readsRejected;
+    private final Counter writesRejected;
+
+    @Autowired
+    public ConcurrencyLimitWebFilter(
+            MeterRegistry registry,
+            @Value("${app.product-composite.concurrency-limit.enabled:true}") boolean enabled,
+            @Value("${app.product-composite.concurrency-limit.initial-limit:20}") int initialLimit,
+            @Value("${app.product-composite.concurrency-limit.min-limit:10}") int minLimit,
+            @Value("${app.product-composite.concurrency-limit.max-limit:500}") int maxLimit,
+            @Value("${app.product-composite.concurrency-limit.queue-size:4}") int queueSize,
+            @Value("${app.product-composite.concurrency-limit.tolerance:1.5}") double tolerance,
+            @Value("${app.product-composite.concurrency-limit.smoothing:0.2}") double smoothing,
+            @Value("${app.product-composite.concurrency-limit.write-share:0.8}") double writeShare,
+            @Value("${app.product-composite.concurrency-limit.retry-after:1s}") Duration retryAfter) {
+
+        this.enabled = enabled;
+        this.retryAfter = String.valueOf(Math.max(1, (retryAfter.toMillis() + 999) / 1000));
+        this.limit = new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit, queueSize, tolerance, smoothing, writeShare);
+
+        if (enabled) {
+            LOG.info("Limits the concurrent composite requests adaptively from {}, between {} and {}, with writeShare = {}",
+                    initialLimit, minLimit, maxLimit, writeShare);
+        }
+
+        Gauge.builder("composite.concurrency.limit", limit, AdaptiveConcurrencyLimit::getLimit).register(registry);
+        Gauge.builder("composite.concurrency.in-flight", limit, AdaptiveConcurrencyLimit::getInFlight).register(registry);
+        readsRejected = Counter.builder("composite.concurrency.rejected").tag("priority", "read").register(registry);
+        writesRejected = Counter.builder("composite.concurrency.rejected").tag("priority", "write").register(registry);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!enabled || !request.getPath().pathWithinApplication().value().startsWith(PATH_PREFIX)) {
+            return chain.filter(exchange);
+        }
+
+        boolean write = !HttpMethod.GET.equals(request.getMethod()) && !HttpMethod.HEAD.equals(request.getMethod());
+        if (!limit.tryAcquire(write)) {
+            (write ? writesRejected : readsRejected).increment();
+            LOG.debug("Rejects {} {}, {} requests are in flight with a limit of {}",
+                    request.getMethod(), request.getPath(), limit.getInFlight(), limit.getLimit());
+            exchange.getResponse().setStatusCode(SERVICE_UNAVAILABLE);
+            exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfter);
+            return exchange.getResponse().setComplete();
+        }
+
+        // The latency is taken when the response starts, so that streamed responses count as well
+        long start = System.nanoTime();
+        exchange.getResponse().beforeCommit(() -> {
+            limit.onSample(System.nanoTime() - start, limit.getInFlight());
+            return Mono.empty();
+        });
+        return chain.filter(exchange).doFinally(signal -> limit.release());
+    }
+}
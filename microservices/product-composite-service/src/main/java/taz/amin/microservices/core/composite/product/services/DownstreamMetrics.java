@@ -0,0 +1,190 @@
+package taz.amin.microservices.core.composite.product.services;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ConnectTimeoutException;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.client.reactive.ClientHttpRequestDecorator;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import taz.amin.api.core.Deadline;
+import taz.amin.api.exceptions.BadRequestException;
+import taz.amin.api.exceptions.DeadlineExceededException;
+import taz.amin.api.exceptions.InvalidInputException;
+import taz.amin.api.exceptions.NotFoundException;
+import taz.amin.api.exceptions.ServiceUnavailableException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Times the calls to one downstream service per operation, and records the size of the bodies
+ * sent to it and received from it, to tell which dependency a slow composite request waited for.
+ *
+ * Published metrics, tagged with the downstream service and the operation, e.g. getProduct:
+ * - "composite.downstream.calls": the time until a call completed, including decoding the
+ *   response and hedging it, with percentile histograms. Also tagged with the outcome:
+ *   - success
+ *   - 4xx: the call was rejected, e.g. not found or invalid input
+ *   - 5xx: server errors and connection failures
+ *   - timeout: no connection or response in time, or the request deadline passed while waiting
+ *   - fallback: not sent since the circuit breaker is open, the composite falls back at once
+ * - "composite.downstream.payload": the size of the request and response bodies in bytes,
+ *   uncompressed, tagged with the direction, request or response. Each hedged request counts.
+ *
+ * Calls that are cancelled before the deadline has passed, e.g. since another part of the same
+ * request has failed already, are not timed.
+ */
+public class DownstreamMetrics implements ExchangeFilterFunction {
+    private static final String OPERATION = DownstreamMetrics.class.getName() + ".operation";
+    private static final String UNKNOWN = "unknown";
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private enum Outcome {
+        SUCCESS("success"), CLIENT_ERROR("4xx"), SERVER_ERROR("5xx"), TIMEOUT("timeout"), FALLBACK("fallback");
+
+        private final String tag;
+
+        Outcome(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final String downstream;
+    private final MeterRegistry registry;
+    // The timers of an operation by outcome, registered on first use
+    private final Map<String, Timer[]> timers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> requestSizes = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> responseSizes = new ConcurrentHashMap<>();
+
+    public DownstreamMetrics(String downstream, MeterRegistry registry) {
+        this.downstream = downstream;
+        this.registry = registry;
+    }
+
+    public <T> Mono<T> timed(String operation, Mono<T> call) {
+        return Mono.deferContextual(context -> {
+            Deadline deadline = context.getOrDefault(Deadline.class, null);
+            long start = System.nanoTime();
+            return call
+                    .doOnSuccess(value -> record(operation, Outcome.SUCCESS, start))
+                    .doOnError(ex -> record(operation, outcome(ex), start))
+                    .doOnCancel(() -> recordCancel(operation, deadline, start));
+        }).contextWrite(context -> context.put(OPERATION, operation));
+    }
+
+    public <T> Flux<T> timed(String operation, Flux<T> call) {
+        return Flux.deferContextual(context -> {
+            Deadline deadline = context.getOrDefault(Deadline.class, null);
+            long start = System.nanoTime();
+            return call
+                    .doOnComplete(() -> record(operation, Outcome.SUCCESS, start))
+                    .doOnError(ex -> record(operation, outcome(ex), start))
+                    .doOnCancel(() -> recordCancel(operation, deadline, start));
+        }).contextWrite(context -> context.put(OPERATION, operation));
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.deferContextual(context -> {
+            String operation = context.getOrDefault(OPERATION, UNKNOWN);
+
+            // Only requests with a body are written through writeWith
+            ClientRequest counted = ClientRequest.from(request)
+                    .body((message, insertContext) -> request.body().insert(new ClientHttpRequestDecorator(message) {
+                        @Override
+                        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                            return super.writeWith(countBytes(Flux.from(body), payloadSize(requestSizes, operation, "request")));
+                        }
+                    }, insertContext))
+                    .build();
+
+            return next.exchange(counted).map(response -> response.mutate()
+                    .body(body -> countBytes(body, payloadSize(responseSizes, operation, "response")))
+                    .build());
+        });
+    }
+
+    private static <B extends DataBuffer> Flux<B> countBytes(Flux<B> body, DistributionSummary size) {
+        long[] bytes = new long[1];
+        return body
+                .doOnNext(buffer -> bytes[0] += buffer.readableByteCount())
+                .doOnComplete(() -> size.record(bytes[0]));
+    }
+
+    private void recordCancel(String operation, Deadline deadline, long start) {
+        if (deadline != null && deadline.isExpired()) {
+            record(operation, Outcome.TIMEOUT, start);
+        }
+    }
+
+    private void record(String operation, Outcome outcome, long start) {
+        timer(operation, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(String operation, Outcome outcome) {
+        Timer[] byOutcome = timers.computeIfAbsent(operation, key -> new Timer[Outcome.values().length]);
+        Timer timer = byOutcome[outcome.ordinal()];
+        if (timer == null) {
+            // A race registers the same timer twice, which the registry returns both times
+            timer = Timer.builder("composite.downstream.calls")
+                    .tag("downstream", downstream)
+                    .tag("operation", operation)
+                    .tag("outcome", outcome.tag)
+                    .publishPercentileHistogram()
+                    .publishPercentiles(PERCENTILES)
+                    .register(registry);
+            byOutcome[outcome.ordinal()] = timer;
+        }
+        return timer;
+    }
+
+    private DistributionSummary payloadSize(Map<String, DistributionSummary> sizes, String operation, String direction) {
+        return sizes.computeIfAbsent(operation, key -> DistributionSummary.builder("composite.downstream.payload")
+                .baseUnit("bytes")
+                .tag("downstream", downstream)
+                .tag("operation", operation)
+                .tag("direction", direction)
+                .publishPercentileHistogram()
+                .publishPercentiles(PERCENTILES)
+                .minimumExpectedValue(64.0)
+                .maximumExpectedValue(16.0 * 1024 * 1024)
+                .register(registry));
+    }
+
+    private static Outcome outcome(Throwable ex) {
+        // 503 and 504 responses are mapped to API exceptions that keep the response as their cause
+        if (ex.getCause() instanceof WebClientResponseException) {
+            return outcome(ex.getCause());
+        }
+        // Otherwise only thrown when the circuit breaker does not permit the call
+        if (ex instanceof ServiceUnavailableException) {
+            return Outcome.FALLBACK;
+        }
+        if (ex instanceof NotFoundException || ex instanceof InvalidInputException || ex instanceof BadRequestException) {
+            return Outcome.CLIENT_ERROR;
+        }
+        if (ex instanceof WebClientResponseException) {
+            return ((WebClientResponseException) ex).getStatusCode().is4xxClientError() ? Outcome.CLIENT_ERROR : Outcome.SERVER_ERROR;
+        }
+        // Response and pool acquire timeouts arrive wrapped in a WebClientRequestException
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TimeoutException
+                    || cause instanceof io.netty.handler.timeout.TimeoutException
+                    || cause instanceof ConnectTimeoutException
+                    || cause instanceof DeadlineExceededException) {
+                return Outcome.TIMEOUT;
+            }
+        }
+        return Outcome.SERVER_ERROR;
+    }
+}
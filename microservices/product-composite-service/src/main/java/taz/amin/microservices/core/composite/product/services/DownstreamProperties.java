@@ -0,0 +1,262 @@
+package taz.amin.microservices.core.composite.product.services;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Connection settings for the core services called by the composite, bound from the "app" prefix.
+ *
+ * Every downstream service gets its own connection pool, so a slow review-service cannot starve
+ * the calls to product-service or recommendation-service of connections.
+ *
+ * A downstream service is either a single host and port, or a list of instances as "host:port",
+ * that the calls are balanced over by an {@link InstanceBalancer}.
+ */
+@ConfigurationProperties(prefix = "app")
+public class DownstreamProperties {
+    private final Downstream productService = new Downstream();
+    private final Downstream recommendationService = new Downstream();
+    private final Downstream reviewService = new Downstream();
+
+    public Downstream getProductService() {
+        return productService;
+    }
+
+    public Downstream getRecommendationService() {
+        return recommendationService;
+    }
+
+    public Downstream getReviewService() {
+        return reviewService;
+    }
+
+    public static class Downstream {
+        private String host;
+        private int port;
+        private List<String> instances = new ArrayList<>();
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        private Duration responseTimeout = Duration.ofSeconds(5);
+        private WireFormat wireFormat = WireFormat.SMILE;
+        private boolean compression = true;
+        private final Pool pool = new Pool();
+        private final OutlierEjection outlierEjection = new OutlierEjection();
+
+        /**
+         * @return the url of the first instance, requests are sent to the instance chosen by the balancer
+         */
+        public String getBaseUrl() {
+            return "http://" + getInstanceAddresses().get(0);
+        }
+
+        /**
+         * @return the configured instances, or the host and port if there are none
+         */
+        public List<String> getInstanceAddresses() {
+            return instances.isEmpty() ? List.of(host + ":" + port) : instances;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public void setHost(String host) {
+            this.host = host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public void setPort(int port) {
+            this.port = port;
+        }
+
+        public List<String> getInstances() {
+            return instances;
+        }
+
+        public void setInstances(List<String> instances) {
+            this.instances = instances;
+        }
+
+        public Duration getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public void setConnectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        public Duration getResponseTimeout() {
+            return responseTimeout;
+        }
+
+        public void setResponseTimeout(Duration responseTimeout) {
+            this.responseTimeout = responseTimeout;
+        }
+
+        public WireFormat getWireFormat() {
+            return wireFormat;
+        }
+
+        public void setWireFormat(WireFormat wireFormat) {
+            this.wireFormat = wireFormat;
+        }
+
+        /**
+         * @return true if responses are requested gzip compressed, the service compresses them above its min-response-size
+         */
+        public boolean isCompression() {
+            return compression;
+        }
+
+        public void setCompression(boolean compression) {
+            this.compression = compression;
+        }
+
+        public Pool getPool() {
+            return pool;
+        }
+
+        public OutlierEjection getOutlierEjection() {
+            return outlierEjection;
+        }
+    }
+
+    /**
+     * The format responses are requested in. JSON is always accepted as well, for the endpoints
+     * that only produce JSON.
+     */
+    public enum WireFormat {
+        JSON("application/json"),
+        SMILE("application/x-jackson-smile, application/json;q=0.9");
+
+        private final String accept;
+
+        WireFormat(String accept) {
+            this.accept = accept;
+        }
+
+        public String getAccept() {
+            return accept;
+        }
+    }
+
+    public static class Pool {
+        private int maxConnections = 50;
+        private int pendingAcquireMaxCount = 500;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(2);
+        private Duration maxIdleTime = Duration.ofSeconds(20);
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        private Duration evictionInterval = Duration.ofSeconds(30);
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        public int getPendingAcquireMaxCount() {
+            return pendingAcquireMaxCount;
+        }
+
+        public void setPendingAcquireMaxCount(int pendingAcquireMaxCount) {
+            this.pendingAcquireMaxCount = pendingAcquireMaxCount;
+        }
+
+        public Duration getPendingAcquireTimeout() {
+            return pendingAcquireTimeout;
+        }
+
+        public void setPendingAcquireTimeout(Duration pendingAcquireTimeout) {
+            this.pendingAcquireTimeout = pendingAcquireTimeout;
+        }
+
+        public Duration getMaxIdleTime() {
+            return maxIdleTime;
+        }
+
+        public void setMaxIdleTime(Duration maxIdleTime) {
+            this.maxIdleTime = maxIdleTime;
+        }
+
+        public Duration getMaxLifeTime() {
+            return maxLifeTime;
+        }
+
+        public void setMaxLifeTime(Duration maxLifeTime) {
+            this.maxLifeTime = maxLifeTime;
+        }
+
+        public Duration getEvictionInterval() {
+            return evictionInterval;
+        }
+
+        public void setEvictionInterval(Duration evictionInterval) {
+            this.evictionInterval = evictionInterval;
+        }
+    }
+
+    /**
+     * When an instance of a downstream service is ejected, i.e. gets no calls for a while. Server
+     * errors, connection failures and responses slower than the slow-call-threshold count as failures.
+     */
+    public static class OutlierEjection {
+        private int consecutiveFailures = 5;
+        private Duration slowCallThreshold = Duration.ofSeconds(2);
+        private Duration baseEjectionTime = Duration.ofSeconds(30);
+        private Duration maxEjectionTime = Duration.ofMinutes(5);
+        private int maxEjectionPercent = 50;
+
+        public int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        public void setConsecutiveFailures(int consecutiveFailures) {
+            this.consecutiveFailures = consecutiveFailures;
+        }
+
+        public Duration getSlowCallThreshold() {
+            return slowCallThreshold;
+        }
+
+        public void setSlowCallThreshold(Duration slowCallThreshold) {
+            this.slowCallThreshold = slowCallThreshold;
+        }
+
+        /**
+         * @return how long an instance is ejected, multiplied by the number of times it has been ejected
+         */
+        public Duration getBaseEjectionTime() {
+            return baseEjectionTime;
+        }
+
+        public void setBaseEjectionTime(Duration baseEjectionTime) {
+            this.baseEjectionTime = baseEjectionTime;
+        }
+
+        public Duration getMaxEjectionTime() {
+            return maxEjectionTime;
+        }
+
+        public void setMaxEjectionTime(Duration maxEjectionTime) {
+            this.maxEjectionTime = maxEjectionTime;
+        }
+
+        /**
+         * @return the share of the instances that may be ejected at the same time
+         */
+        public int getMaxEjectionPercent() {
+            return maxEjectionPercent;
+        }
+
+        public void setMaxEjectionPercent(int maxEjectionPercent) {
+            this.maxEjectionPercent = maxEjectionPercent;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package taz.amin.microservices.core.composite.product.services;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import taz.amin.api.core.Deadline;
+import taz.amin.api.core.ServerTiming;
+import taz.amin.api.exceptions.DeadlineExceededException;
+import taz.amin.api.exceptions.InvalidInputException;
+import taz.amin.api.exceptions.NotFoundException;
+import taz.amin.api.exceptions.ServiceUnavailableException;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Creates one non-blocking {@link WebClient} per downstream service, each with its own Reactor
+ * Netty connection pool, whose metrics are published as "reactor.netty.connection.provider.*".
+ *
+ * The filters of a call run in this order, outermost first: 404 and 422 responses are mapped to
+ * exceptions, the deadline is propagated, Server-Timing entries are relayed, the circuit breaker of
+ * the service is applied, the call is timed by {@link DownstreamMetrics}, and an instance is picked
+ * by the {@link InstanceBalancer}.
+ */
+@Component
+public class DownstreamWebClientFactory implements DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(DownstreamWebClientFactory.class);
+
+    private final WebClient.Builder webClientBuilder;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final MeterRegistry meterRegistry;
+    private final List<ConnectionProvider> connectionProviders = new CopyOnWriteArrayList<>();
+    private final Map<String, InstanceBalancer> balancers = new ConcurrentHashMap<>();
+    private final Map<String, DownstreamMetrics> metrics = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DownstreamWebClientFactory(
+            WebClient.Builder webClientBuilder,
+            CircuitBreakerRegistry circuitBreakerRegistry,
+            MeterRegistry meterRegistry) {
+
+        this.webClientBuilder = webClientBuilder;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public WebClient create(String name, DownstreamProperties.Downstream downstream) {
+        DownstreamProperties.Pool pool = downstream.getPool();
+
+        LOG.info("Creates a connection pool for {} with maxConnections = {}, maxIdleTime = {}, wireFormat = {}, compression = {}",
+                name, pool.getMaxConnections(), pool.getMaxIdleTime(), downstream.getWireFormat(), downstream.isCompression());
+
+        ConnectionProvider connectionProvider = ConnectionProvider.builder(name)
+                .maxConnections(pool.getMaxConnections())
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .maxLifeTime(pool.getMaxLifeTime())
+                .evictInBackground(pool.getEvictionInterval())
+                .metrics(true)
+                .build();
+        connectionProviders.add(connectionProvider);
+
+        InstanceBalancer balancer = new InstanceBalancer(
+                name, meterRegistry, downstream.getOutlierEjection(), downstream.getInstanceAddresses());
+        balancers.put(name, balancer);
+
+        DownstreamMetrics downstreamMetrics = new DownstreamMetrics(name, meterRegistry);
+        metrics.put(name, downstreamMetrics);
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) downstream.getConnectTimeout().toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .compress(downstream.isCompression())
+                .responseTimeout(downstream.getResponseTimeout());
+
+        return webClientBuilder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                // Smile by default, cheaper to encode and decode than JSON and smaller on the wire
+                .defaultHeader(HttpHeaders.ACCEPT, downstream.getWireFormat().getAccept())
+                .filter(mapErrorResponses())
+                .filter(propagateDeadline(name))
+                .filter(relayServerTiming(name))
+                .filter(circuitBreaker(circuitBreakerRegistry.circuitBreaker(name)))
+                .filter(downstreamMetrics)
+                .filter(balancer)
+                .build();
+    }
+
+    public Collection<InstanceBalancer> getBalancers() {
+        return balancers.values();
+    }
+
+    public InstanceBalancer getBalancer(String name) {
+        return balancers.get(name);
+    }
+
+    public DownstreamMetrics getMetrics(String name) {
+        return metrics.get(name);
+    }
+
+    /**
+     * Fails 404 and 422 responses with a {@link NotFoundException} or {@link InvalidInputException}, without
+     * the cost of creating a WebClientResponseException first. Only the message is decoded from the body.
+     */
+    private static ExchangeFilterFunction mapErrorResponses() {
+        return (request, next) -> next.exchange(request).flatMap(response -> {
+            HttpStatus status = HttpStatus.resolve(response.statusCode().value());
+            if (status != HttpStatus.NOT_FOUND && status != HttpStatus.UNPROCESSABLE_ENTITY) {
+                return Mono.just(response);
+            }
+            String fallback = status.value() + " " + status.getReasonPhrase() + " from " + request.method() + " " + request.url();
+            return response.bodyToMono(ErrorBody.class)
+                    .mapNotNull(ErrorBody::getMessage)
+                    .onErrorResume(ex -> Mono.empty())
+                    .defaultIfEmpty(fallback)
+                    .flatMap(message -> Mono.error((status == HttpStatus.NOT_FOUND)
+                            ? new NotFoundException(message)
+                            : new InvalidInputException(message)));
+        });
+    }
+
+    /**
+     * Server errors, connection failures and slow responses count as failures, 4xx responses are valid
+     * answers. While the circuit is open, calls fail at once with a {@link ServiceUnavailableException}.
+     * It covers the service as a whole, a slow or failing instance is ejected by the balancer instead.
+     */
+    private static ExchangeFilterFunction circuitBreaker(CircuitBreaker circuitBreaker) {
+        return (request, next) -> next.exchange(request)
+                // Server errors must fail the exchange to be counted, the response body is kept in the exception
+                .flatMap(response -> response.statusCode().is5xxServerError()
+                        ? response.createException().flatMap(ex -> Mono.<ClientResponse>error(ex))
+                        : Mono.just(response))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .onErrorMap(CallNotPermittedException.class, ex -> new ServiceUnavailableException(
+                        circuitBreaker.getName() + " is unavailable, its circuit breaker is " + circuitBreaker.getState()));
+    }
+
+    /**
+     * Sends the time left of the {@link Deadline} in the Reactor context along in the {@link Deadline#HEADER}
+     * header, and does not send the call at all once it has passed.
+     */
+    private static ExchangeFilterFunction propagateDeadline(String name) {
+        return (request, next) -> Mono.deferContextual(context -> {
+            Deadline deadline = context.getOrDefault(Deadline.class, null);
+            if (deadline == null) {
+                return next.exchange(request);
+            }
+            if (deadline.isExpired()) {
+                return Mono.error(new DeadlineExceededException("Deadline exceeded before calling " + name));
+            }
+            return next.exchange(ClientRequest.from(request)
+                    .header(Deadline.HEADER, deadline.toHeaderValue())
+                    .build());
+        });
+    }
+
+    /**
+     * Relays the {@link ServerTiming#HEADER} entries of the response, e.g. the database time of a core
+     * service, to the {@link ServerTiming} in the Reactor context, prefixed with the name of the service.
+     */
+    private static ExchangeFilterFunction relayServerTiming(String name) {
+        return (request, next) -> Mono.deferContextual(context -> {
+            ServerTiming timing = context.getOrDefault(ServerTiming.class, null);
+            if (timing == null) {
+                return next.exchange(request);
+            }
+            return next.exchange(request).doOnNext(response ->
+                    response.headers().header(ServerTiming.HEADER).forEach(headerValue -> timing.relay(name, headerValue)));
+        });
+    }
+
+    @Override
+    public void destroy() {
+        connectionProviders.forEach(ConnectionProvider::dispose);
+    }
+
+    /**
+     * The part of an error body that is used, the other fields are skipped when decoding it.
+     */
+    public static class ErrorBody {
+        private String message;
+
+        public String getMessage() {
+            return message;
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+    }
+}
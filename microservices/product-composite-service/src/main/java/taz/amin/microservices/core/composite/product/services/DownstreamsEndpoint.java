@@ -0,0 +1,41 @@
+package taz.amin.microservices.core.composite.product.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Shows the instances of each downstream service with the state they are balanced by, at
+ * "/actuator/downstreams", or of one of them at "/actuator/downstreams/{name}".
+ *
+ * Read only, the instances are configured in app.{name}.instances.
+ */
+@Component
+@Endpoint(id = "downstreams")
+public class DownstreamsEndpoint {
+    private final DownstreamWebClientFactory webClientFactory;
+
+    @Autowired
+    public DownstreamsEndpoint(DownstreamWebClientFactory webClientFactory) {
+        this.webClientFactory = webClientFactory;
+    }
+
+    @ReadOperation
+    public Map<String, List<InstanceBalancer.Instance>> downstreams() {
+        Map<String, List<InstanceBalancer.Instance>> downstreams = new TreeMap<>();
+        webClientFactory.getBalancers().forEach(balancer -> downstreams.put(balancer.getDownstream(), balancer.getInstances()));
+        return downstreams;
+    }
+
+    @ReadOperation
+    public List<InstanceBalancer.Instance> downstream(@Selector String name) {
+        InstanceBalancer balancer = webClientFactory.getBalancer(name);
+        return (balancer == null) ? null : balancer.getInstances();
+    }
+}
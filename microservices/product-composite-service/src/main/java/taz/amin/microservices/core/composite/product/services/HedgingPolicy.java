@@ -0,0 +1,154 @@
+package taz.amin.microservices.core.composite.product.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hedges idempotent requests to one downstream service: if no response has arrived when the
+ * hedging delay has passed, a second identical request is sent and the first successful response wins.
+ *
+ * The delay follows the configured latency percentile of the recent requests, so only the slow
+ * tail gets hedged. The extra load is capped by a token bucket: every request adds budgetRatio
+ * tokens, every hedge costs one, so at most about budgetRatio of the requests are duplicated.
+ *
+ * Published metrics, all tagged with the downstream service name:
+ * - "composite.hedging.latency": latency of the requests, used to derive the delay
+ * - "composite.hedging.requests": hedges by result, sent, won or rejected (no budget left)
+ */
+public class HedgingPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(HedgingPolicy.class);
+
+    private static final long TOKEN = 1000;
+    private static final long MIN_SAMPLES = 20;
+    private static final long DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String downstream;
+    private final boolean enabled;
+    private final long minDelayNanos;
+    private final long budgetTokensPerRequest;
+    private final long maxTokens;
+
+    private final Timer latency;
+    private final Counter hedgesSent;
+    private final Counter hedgesWon;
+    private final Counter hedgesRejected;
+
+    private final AtomicLong tokens = new AtomicLong();
+    private volatile long delayNanos;
+    private volatile long nextDelayRefresh;
+
+    public HedgingPolicy(
+            String downstream,
+            MeterRegistry registry,
+            boolean enabled,
+            double percentile,
+            Duration initialDelay,
+            Duration minDelay,
+            double budgetRatio) {
+
+        this.downstream = downstream;
+        this.enabled = enabled;
+        this.delayNanos = initialDelay.toNanos();
+        this.minDelayNanos = minDelay.toNanos();
+        this.budgetTokensPerRequest = Math.round(budgetRatio * TOKEN);
+        this.maxTokens = 10 * TOKEN;
+
+        this.latency = Timer.builder("composite.hedging.latency")
+                .tag("downstream", downstream)
+                .publishPercentiles(percentile)
+                .distributionStatisticExpiry(Duration.ofMinutes(1))
+                .register(registry);
+        this.hedgesSent = hedgeCounter(registry, "sent");
+        this.hedgesWon = hedgeCounter(registry, "won");
+        this.hedgesRejected = hedgeCounter(registry, "rejected");
+    }
+
+    /**
+     * @param request a cold, idempotent request, subscribed to once more for the hedge
+     */
+    public <T> Mono<T> hedge(Mono<T> request) {
+        if (!enabled) {
+            return request;
+        }
+
+        return Mono.defer(() -> {
+            tokens.getAndUpdate(t -> Math.min(maxTokens, t + budgetTokensPerRequest));
+
+            // Both requests are wrapped in an Optional, so that only a skipped hedge completes empty
+            Sinks.One<Boolean> primaryFailed = Sinks.one();
+            Mono<Optional<T>> primary = timed(request)
+                    .map(Optional::of)
+                    .defaultIfEmpty(Optional.empty())
+                    .doOnError(ex -> primaryFailed.tryEmitValue(true));
+            Mono<Optional<T>> hedged = Mono.delay(Duration.ofNanos(currentDelayNanos()))
+                    .takeUntilOther(primaryFailed.asMono())
+                    .flatMap(tick -> {
+                        if (!tryAcquireToken()) {
+                            hedgesRejected.increment();
+                            return Mono.empty();
+                        }
+                        LOG.debug("No response from {} within the hedging delay, sends a hedged request", downstream);
+                        hedgesSent.increment();
+                        return timed(request).doOnSuccess(v -> hedgesWon.increment())
+                                .map(Optional::of)
+                                .defaultIfEmpty(Optional.empty());
+                    });
+
+            // The first value wins and the other request is cancelled. A primary that fails before the
+            // hedging delay is not hedged, otherwise an error only wins if both requests failed
+            return Mono.firstWithValue(primary, hedged)
+                    .onErrorMap(NoSuchElementException.class, ex -> Exceptions.unwrapMultiple(ex.getCause()).get(0))
+                    .flatMap(Mono::justOrEmpty);
+        });
+    }
+
+    private <T> Mono<T> timed(Mono<T> request) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return request.doOnSuccess(v -> latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private boolean tryAcquireToken() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    private long currentDelayNanos() {
+        long now = System.nanoTime();
+        if (now - nextDelayRefresh > 0 && latency.count() >= MIN_SAMPLES) {
+            nextDelayRefresh = now + DELAY_REFRESH_NANOS;
+            ValueAtPercentile[] percentiles = latency.takeSnapshot().percentileValues();
+            if (percentiles.length > 0) {
+                delayNanos = Math.max(minDelayNanos, (long) percentiles[0].value(TimeUnit.NANOSECONDS));
+            }
+        }
+        return delayNanos;
+    }
+
+    private Counter hedgeCounter(MeterRegistry registry, String result) {
+        return Counter.builder("composite.hedging.requests")
+                .tag("downstream", downstream)
+                .tag("result", result)
+                .register(registry);
+    }
+}
@@ -0,0 +1,51 @@
+package taz.amin.microservices.core.composite.product.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Creates one {@link HedgingPolicy} per downstream service, so that each of them tracks its own
+ * latency and spends its own hedging budget.
+ */
+@Component
+public class HedgingPolicyFactory {
+    private static final Logger LOG = LoggerFactory.getLogger(HedgingPolicyFactory.class);
+
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final double percentile;
+    private final Duration initialDelay;
+    private final Duration minDelay;
+    private final double budgetRatio;
+
+    @Autowired
+    public HedgingPolicyFactory(
+            MeterRegistry registry,
+            @Value("${app.product-composite.hedging.enabled:false}") boolean enabled,
+            @Value("${app.product-composite.hedging.percentile:0.95}") double percentile,
+            @Value("${app.product-composite.hedging.initial-delay:100ms}") Duration initialDelay,
+            @Value("${app.product-composite.hedging.min-delay:10ms}") Duration minDelay,
+            @Value("${app.product-composite.hedging.budget-ratio:0.1}") double budgetRatio) {
+
+        this.registry = registry;
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.initialDelay = initialDelay;
+        this.minDelay = minDelay;
+        this.budgetRatio = budgetRatio;
+
+        if (enabled) {
+            LOG.info("Hedges downstream lookups after their p{} latency, with budgetRatio = {}", Math.round(percentile * 100), budgetRatio);
+        }
+    }
+
+    public HedgingPolicy create(String downstream) {
+        return new HedgingPolicy(downstream, registry, enabled, percentile, initialDelay, minDelay, budgetRatio);
+    }
+}
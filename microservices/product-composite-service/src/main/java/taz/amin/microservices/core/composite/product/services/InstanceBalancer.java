@@ -0,0 +1,265 @@
+package taz.amin.microservices.core.composite.product.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads the calls to one downstream service over its instances, by the power of two choices:
+ * two instances are picked at random, and the call goes to the one with the fewest outstanding
+ * requests. A slow instance gets fewer calls, as its calls stay outstanding for longer, and unlike
+ * always picking the least loaded instance, a burst of calls is not sent to the same instance
+ * before its count goes up.
+ *
+ * Instances are ejected passively, from the calls themselves: after consecutive-failures server
+ * errors, connection failures or slow responses in a row, an instance gets no calls for the base
+ * ejection time, multiplied by the number of times it has been ejected. No more than
+ * max-ejection-percent of the instances are ejected at the same time, and the ejected instances
+ * are used if there are no others.
+ *
+ * The instances can be replaced while running, the ones that are kept keep their state.
+ *
+ * Published metrics, all tagged with the downstream service name and instance:
+ * - "composite.balancer.latency": latency of the calls routed to the instance
+ * - "composite.balancer.outstanding": calls sent to the instance without a response yet
+ * - "composite.balancer.ejected": 1 while the instance is ejected, else 0
+ * - "composite.balancer.ejections": times the instance has been ejected
+ */
+public class InstanceBalancer implements ExchangeFilterFunction {
+    private static final Logger LOG = LoggerFactory.getLogger(InstanceBalancer.class);
+
+    // Weight of the latest call in the average latency shown for an instance
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    private final String downstream;
+    private final MeterRegistry registry;
+    private final DownstreamProperties.OutlierEjection outlierEjection;
+
+    private volatile List<Instance> instances = List.of();
+
+    public InstanceBalancer(
+            String downstream,
+            MeterRegistry registry,
+            DownstreamProperties.OutlierEjection outlierEjection,
+            List<String> addresses) {
+
+        this.downstream = downstream;
+        this.registry = registry;
+        this.outlierEjection = outlierEjection;
+        setInstances(addresses);
+    }
+
+    public String getDownstream() {
+        return downstream;
+    }
+
+    public List<Instance> getInstances() {
+        return instances;
+    }
+
+    /**
+     * @param addresses the instances as "host:port"
+     */
+    public synchronized void setInstances(List<String> addresses) {
+        if (addresses.isEmpty()) {
+            throw new IllegalArgumentException("No instances of " + downstream);
+        }
+        addresses.forEach(this::checkAddress);
+
+        List<Instance> previous = instances;
+        List<Instance> next = new ArrayList<>();
+        for (String address : addresses) {
+            next.add(previous.stream()
+                    .filter(instance -> instance.getAddress().equals(address))
+                    .findFirst()
+                    .orElseGet(() -> new Instance(address)));
+        }
+        instances = List.copyOf(next);
+
+        previous.stream()
+                .filter(instance -> !next.contains(instance))
+                .forEach(instance -> instance.meters.forEach(registry::remove));
+
+        LOG.info("Balances the calls to {} over the instances {}", downstream, addresses);
+    }
+
+    private void checkAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        try {
+            if (colon > 0 && Integer.parseInt(address.substring(colon + 1)) > 0) {
+                return;
+            }
+        } catch (NumberFormatException nfe) {
+            // Falls through
+        }
+        throw new IllegalArgumentException("Invalid instance of " + downstream + ": " + address + ", must be host:port");
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> {
+            Instance instance = choose();
+            URI url = UriComponentsBuilder.fromUri(request.url())
+                    .host(instance.host)
+                    .port(instance.port)
+                    .build(true)
+                    .toUri();
+
+            LOG.debug("Routes {} {} to {}", request.method(), request.url(), instance.getAddress());
+
+            instance.outstanding.incrementAndGet();
+            long start = System.nanoTime();
+
+            return next.exchange(ClientRequest.from(request).url(url).build())
+                    .doOnSuccess(response -> instance.record(
+                            response != null && !response.statusCode().is5xxServerError(), System.nanoTime() - start))
+                    .doOnError(ex -> instance.record(false, System.nanoTime() - start))
+                    .doFinally(signal -> instance.outstanding.decrementAndGet());
+        });
+    }
+
+    Instance choose() {
+        List<Instance> all = instances;
+        if (all.size() == 1) {
+            return all.get(0);
+        }
+
+        long now = System.nanoTime();
+        List<Instance> available = all.stream().filter(instance -> !instance.isEjected(now)).toList();
+        if (available.isEmpty()) {
+            available = all;
+        }
+        if (available.size() == 1) {
+            return available.get(0);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(available.size());
+        int second = random.nextInt(available.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        Instance a = available.get(first);
+        Instance b = available.get(second);
+        return (b.outstanding.get() < a.outstanding.get()) ? b : a;
+    }
+
+    private synchronized void eject(Instance instance) {
+        long now = System.nanoTime();
+        if (instance.isEjected(now) || !instances.contains(instance)) {
+            return;
+        }
+
+        long ejected = instances.stream().filter(other -> other.isEjected(now)).count();
+        if ((ejected + 1) * 100 > (long) outlierEjection.getMaxEjectionPercent() * instances.size()) {
+            LOG.debug("Keeps {} of {}, {} of {} instances are ejected already", instance.getAddress(), downstream, ejected, instances.size());
+            return;
+        }
+
+        long ejectionNanos = Math.min(
+                outlierEjection.getBaseEjectionTime().toNanos() * (instance.ejectionCount.get() + 1),
+                outlierEjection.getMaxEjectionTime().toNanos());
+        instance.ejectedUntil = now + ejectionNanos;
+        instance.ejectionCount.incrementAndGet();
+        instance.ejections.increment();
+
+        LOG.warn("Ejects {} of {} for {} ms, after {} consecutive failures", instance.getAddress(), downstream,
+                TimeUnit.NANOSECONDS.toMillis(ejectionNanos), outlierEjection.getConsecutiveFailures());
+    }
+
+    /**
+     * One instance of the downstream service, with the state the balancer routes by.
+     */
+    public class Instance {
+        private final String host;
+        private final int port;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicInteger ejectionCount = new AtomicInteger();
+        private volatile double averageLatencyNanos;
+        private volatile long ejectedUntil;
+
+        private final Timer latency;
+        private final Counter ejections;
+        private final List<Meter> meters = new ArrayList<>();
+
+        private Instance(String address) {
+            int colon = address.lastIndexOf(':');
+            host = address.substring(0, colon);
+            port = Integer.parseInt(address.substring(colon + 1));
+
+            latency = Timer.builder("composite.balancer.latency")
+                    .tag("downstream", downstream)
+                    .tag("instance", address)
+                    .register(registry);
+            ejections = Counter.builder("composite.balancer.ejections")
+                    .tag("downstream", downstream)
+                    .tag("instance", address)
+                    .register(registry);
+            meters.add(latency);
+            meters.add(ejections);
+            meters.add(Gauge.builder("composite.balancer.outstanding", outstanding, AtomicInteger::get)
+                    .tag("downstream", downstream)
+                    .tag("instance", address)
+                    .register(registry));
+            meters.add(Gauge.builder("composite.balancer.ejected", this, instance -> instance.isEjected(System.nanoTime()) ? 1 : 0)
+                    .tag("downstream", downstream)
+                    .tag("instance", address)
+                    .register(registry));
+        }
+
+        public String getAddress() {
+            return host + ":" + port;
+        }
+
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        public long getAverageLatencyMillis() {
+            return TimeUnit.NANOSECONDS.toMillis((long) averageLatencyNanos);
+        }
+
+        public boolean isEjected() {
+            return isEjected(System.nanoTime());
+        }
+
+        public int getEjectionCount() {
+            return ejectionCount.get();
+        }
+
+        private boolean isEjected(long now) {
+            return ejectionCount.get() > 0 && ejectedUntil - now > 0;
+        }
+
+        private void record(boolean success, long nanos) {
+            latency.record(nanos, TimeUnit.NANOSECONDS);
+            double average = averageLatencyNanos;
+            averageLatencyNanos = (average == 0) ? nanos : average + LATENCY_WEIGHT * (nanos - average);
+
+            if (success && nanos <= outlierEjection.getSlowCallThreshold().toNanos()) {
+                consecutiveFailures.set(0);
+            } else if (consecutiveFailures.incrementAndGet() >= outlierEjection.getConsecutiveFailures()) {
+                consecutiveFailures.set(0);
+                eject(this);
+            }
+        }
+    }
+}
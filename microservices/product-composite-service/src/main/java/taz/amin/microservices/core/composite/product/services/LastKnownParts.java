@@ -0,0 +1,58 @@
+package taz.amin.microservices.core.composite.product.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import taz.amin.api.core.recommendation.Recommendation;
+import taz.amin.api.core.review.Review;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The last successfully fetched recommendations and reviews per productId, served marked as
+ * stale while the recommendation or review service is slow or failing.
+ */
+@Component
+public class LastKnownParts {
+    private static final Logger LOG = LoggerFactory.getLogger(LastKnownParts.class);
+
+    private final StaleWhileRevalidate<Integer, List<Recommendation>> recommendations;
+    private final StaleWhileRevalidate<Integer, List<Review>> reviews;
+
+    @Autowired
+    public LastKnownParts(
+            MeterRegistry meterRegistry,
+            @Value("${app.product-composite.stale.enabled:true}") boolean enabled,
+            @Value("${app.product-composite.stale.max-size:10000}") long maxSize,
+            @Value("${app.product-composite.stale.max-age:24h}") Duration maxAge,
+            @Value("${app.product-composite.stale.max-wait:300ms}") Duration maxWait) {
+
+        LOG.info("Keeps the last known recommendations and reviews with enabled = {}, maxSize = {}, maxAge = {}, maxWait = {}",
+                enabled, maxSize, maxAge, maxWait);
+
+        recommendations = new StaleWhileRevalidate<>("recommendations", meterRegistry, enabled, maxSize, maxAge, maxWait);
+        reviews = new StaleWhileRevalidate<>("reviews", meterRegistry, enabled, maxSize, maxAge, maxWait);
+    }
+
+    public StaleWhileRevalidate<Integer, List<Recommendation>> getRecommendations() {
+        return recommendations;
+    }
+
+    public StaleWhileRevalidate<Integer, List<Review>> getReviews() {
+        return reviews;
+    }
+
+    public void invalidate(int productId) {
+        recommendations.invalidate(productId);
+        reviews.invalidate(productId);
+    }
+
+    public void invalidateAll() {
+        recommendations.invalidateAll();
+        reviews.invalidateAll();
+    }
+}
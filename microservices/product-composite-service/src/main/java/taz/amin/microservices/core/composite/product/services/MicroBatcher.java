@@ -0,0 +1,114 @@
+package taz.amin.microservices.core.composite.product.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Collects independent single key lookups that arrive within a short window and resolves them
+ * with one batch lookup, in the spirit of a DataLoader.
+ *
+ * A batch is sent when the window since its first key has passed or when it reaches the max
+ * batch size, whichever comes first. Keys missing in the batch result complete empty, and if
+ * the batch lookup fails, all callers in the batch get the error.
+ *
+ * The batch lookup runs with the Reactor context of the first caller in the batch, e.g. its
+ * request deadline. The other callers joined within the window, so their deadlines are at most
+ * that much later.
+ */
+public class MicroBatcher<K, V> {
+    private static final Logger LOG = LoggerFactory.getLogger(MicroBatcher.class);
+
+    private final String name;
+    private final Duration window;
+    private final int maxBatchSize;
+    private final Function<Set<K>, Mono<Map<K, V>>> batchLookup;
+    private final Scheduler scheduler = Schedulers.parallel();
+
+    private final Object lock = new Object();
+    private Map<K, Sinks.One<V>> pending = new LinkedHashMap<>();
+    private ContextView pendingContext = Context.empty();
+
+    public MicroBatcher(String name, Duration window, int maxBatchSize, Function<Set<K>, Mono<Map<K, V>>> batchLookup) {
+        this.name = name;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.batchLookup = batchLookup;
+    }
+
+    public Mono<V> load(K key) {
+        return Mono.deferContextual(context -> {
+            Sinks.One<V> sink;
+            Map<K, Sinks.One<V>> batch;
+            ContextView batchContext;
+            boolean first;
+            boolean full;
+
+            synchronized (lock) {
+                batch = pending;
+                sink = batch.get(key);
+                if (sink != null) {
+                    return sink.asMono();
+                }
+                sink = Sinks.one();
+                batch.put(key, sink);
+                first = batch.size() == 1;
+                if (first) {
+                    pendingContext = context;
+                }
+                batchContext = pendingContext;
+                full = batch.size() >= maxBatchSize;
+                if (full) {
+                    pending = new LinkedHashMap<>();
+                }
+            }
+
+            if (full) {
+                send(batch, batchContext);
+            } else if (first) {
+                Map<K, Sinks.One<V>> scheduled = batch;
+                scheduler.schedule(() -> sendIfPending(scheduled, batchContext), window.toNanos(), TimeUnit.NANOSECONDS);
+            }
+            return sink.asMono();
+        });
+    }
+
+    private void sendIfPending(Map<K, Sinks.One<V>> batch, ContextView context) {
+        synchronized (lock) {
+            // The batch may already have been sent because it got full
+            if (pending != batch) {
+                return;
+            }
+            pending = new LinkedHashMap<>();
+        }
+        send(batch, context);
+    }
+
+    private void send(Map<K, Sinks.One<V>> batch, ContextView context) {
+        LOG.debug("{}: sends a batch lookup of {} keys", name, batch.size());
+
+        Mono.defer(() -> batchLookup.apply(batch.keySet())).contextWrite(context).subscribe(
+                results -> batch.forEach((key, sink) -> {
+                    V value = results.get(key);
+                    if (value != null) {
+                        sink.tryEmitValue(value);
+                    } else {
+                        sink.tryEmitEmpty();
+                    }
+                }),
+                error -> batch.values().forEach(sink -> sink.tryEmitError(error)),
+                () -> batch.values().forEach(Sinks.One::tryEmitEmpty));
+    }
+}
@@ -0,0 +1,134 @@
+package taz.amin.microservices.core.composite.product.services;
+
+import taz.amin.api.composite.product.ProductAggregate;
+import taz.amin.api.composite.product.RecommendationSummary;
+import taz.amin.api.composite.product.ReviewSummary;
+import taz.amin.api.composite.product.ServiceAddresses;
+import taz.amin.api.core.product.Product;
+import taz.amin.api.core.recommendation.Recommendation;
+import taz.amin.api.core.review.Review;
+import taz.amin.util.http.EntityTags;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static taz.amin.api.composite.product.ProductAggregateSection.RECOMMENDATIONS;
+import static taz.amin.api.composite.product.ProductAggregateSection.REVIEWS;
+
+/**
+ * Assembles the composite view of a product from its parts and tags it, on every composite lookup
+ * that is not served from the cache.
+ */
+public final class ProductAggregateAssembler {
+
+    private ProductAggregateAssembler() {
+    }
+
+    /**
+     * @param recommendations null if they could not be fetched or were not included
+     * @param reviews null if they could not be fetched or were not included
+     * @param serviceAddress the address of the composite
+     * @param stale the parts that are served from the last successful lookup
+     * @param parts the parts that were included
+     * @param firstPageSize the number of recommendations and reviews to include, 0 if all of them are
+     */
+    public static TaggedProductAggregate assemble(
+            Product product,
+            List<Recommendation> recommendations,
+            List<Review> reviews,
+            String serviceAddress,
+            List<String> stale,
+            Set<String> parts,
+            int firstPageSize) {
+
+        // 1. Setup product info
+        int productId = product.getProductId();
+        String name = product.getName();
+        int weight = product.getWeight();
+
+        // 2. Copy summary recommendation info, if available
+        List<RecommendationSummary> recommendationSummaries = toRecommendationSummaries(firstPage(recommendations, firstPageSize));
+
+        // 3. Copy summary review info, if available
+        List<ReviewSummary> reviewSummaries = toReviewSummaries(firstPage(reviews, firstPageSize));
+
+        // 4. Create info regarding the involved microservices addresses
+        String productAddress = product.getServiceAddress();
+        String reviewAddress = firstServiceAddress(reviews, Review::getServiceAddress);
+        String recommendationAddress = firstServiceAddress(recommendations, Recommendation::getServiceAddress);
+        ServiceAddresses serviceAddresses = new ServiceAddresses(serviceAddress, productAddress, reviewAddress, recommendationAddress);
+
+        // 5. Mark the included parts that could not be fetched
+        List<String> missing = new ArrayList<>();
+        if (recommendations == null && parts.contains(RECOMMENDATIONS)) {
+            missing.add("recommendations");
+        }
+        if (reviews == null && parts.contains(REVIEWS)) {
+            missing.add("reviews");
+        }
+
+        // 6. Mark the parts of which only the first page is included
+        List<String> truncated = new ArrayList<>();
+        if (isTruncated(recommendations, firstPageSize)) {
+            truncated.add("recommendations");
+        }
+        if (isTruncated(reviews, firstPageSize)) {
+            truncated.add("reviews");
+        }
+
+        // 7. Tag the aggregate from its parts, once here instead of on every response
+        ProductAggregate aggregate = new ProductAggregate(productId, name, weight, recommendationSummaries, reviewSummaries, serviceAddresses, missing, stale, truncated);
+        return new TaggedProductAggregate(aggregate,
+                EntityTags.builder().add(productId).add(name).add(weight).build(),
+                partTag(recommendationSummaries, (tag, r) -> tag.add(r.getRecommendationId()).add(r.getAuthor()).add(r.getRate()).add(r.getContent())),
+                partTag(reviewSummaries, (tag, r) -> tag.add(r.getReviewId()).add(r.getAuthor()).add(r.getSubject()).add(r.getContent())));
+    }
+
+    /**
+     * The core services do not expose the database ids and versions of their entities, so the tag
+     * of a part is derived from the summary fields that end up in the response instead.
+     *
+     * @return the tag of the items, null if they could not be fetched or were not included
+     */
+    private static <T> String partTag(List<T> items, BiConsumer<EntityTags, T> addItem) {
+        if (items == null) {
+            return null;
+        }
+        EntityTags tag = EntityTags.builder().add(items.size());
+        items.forEach(item -> addItem.accept(tag, item));
+        return tag.build();
+    }
+
+    /**
+     * A first page is looked up with one more item than it holds, which only tells that there are more.
+     *
+     * @param firstPageSize 0 if all of the items were looked up
+     */
+    static boolean isTruncated(List<?> items, int firstPageSize) {
+        return firstPageSize > 0 && items != null && items.size() > firstPageSize;
+    }
+
+    static <T> List<T> firstPage(List<T> items, int firstPageSize) {
+        return isTruncated(items, firstPageSize) ? items.subList(0, firstPageSize) : items;
+    }
+
+    static <T> String firstServiceAddress(List<T> items, Function<T, String> serviceAddress) {
+        return (items != null && items.size() > 0) ? serviceAddress.apply(items.get(0)) : "";
+    }
+
+    static List<RecommendationSummary> toRecommendationSummaries(List<Recommendation> recommendations) {
+        return (recommendations == null) ? null : recommendations.stream()
+                .map(r -> new RecommendationSummary(r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent()))
+                .collect(Collectors.toList());
+    }
+
+    static List<ReviewSummary> toReviewSummaries(List<Review> reviews) {
+        return (reviews == null) ? null : reviews.stream()
+                .map(r -> new ReviewSummary(r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,87 @@
+package taz.amin.microservices.core.composite.product.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded in-process cache of assembled product aggregates and their entity tags, keyed by productId.
+ *
+ * Caffeine evicts by size and by time since the entry was written, and uses a frequency based
+ * admission policy (W-TinyLFU) so that a burst of one-off reads does not push the hot products
+ * out of the cache. Hit, miss and eviction counts are published as "cache.*" metrics with the
+ * tag cache=product-aggregate.
+ *
+ * Writes invalidate the affected productId. A read that was started before an invalidation is
+ * not allowed to put its result into the cache, since it may have seen the old data.
+ */
+@Component
+public class ProductAggregateCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ProductAggregateCache.class);
+
+    private final boolean enabled;
+    private final Cache<Integer, TaggedProductAggregate> cache;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Autowired
+    public ProductAggregateCache(
+            MeterRegistry meterRegistry,
+            @Value("${app.product-composite.cache.enabled:true}") boolean enabled,
+            @Value("${app.product-composite.cache.max-size:10000}") long maxSize,
+            @Value("${app.product-composite.cache.time-to-live:30s}") Duration timeToLive) {
+
+        LOG.info("Creates a product aggregate cache with enabled = {}, maxSize = {}, timeToLive = {}", enabled, maxSize, timeToLive);
+
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "product-aggregate");
+    }
+
+    /**
+     * @return a token to pass to {@link #put(int, TaggedProductAggregate, long)} once the aggregate has been assembled
+     */
+    public long startRead() {
+        return invalidations.get();
+    }
+
+    public TaggedProductAggregate get(int productId) {
+        return enabled ? cache.getIfPresent(productId) : null;
+    }
+
+    public void put(int productId, TaggedProductAggregate aggregate, long readToken) {
+        if (!enabled) {
+            return;
+        }
+        cache.put(productId, aggregate);
+
+        // An invalidation may have raced with the read, drop the entry again if so
+        if (invalidations.get() != readToken) {
+            cache.invalidate(productId);
+        }
+    }
+
+    public void invalidate(int productId) {
+        invalidations.incrementAndGet();
+        cache.invalidate(productId);
+        LOG.debug("Invalidated the cached product aggregate for productId: {}", productId);
+    }
+
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+}
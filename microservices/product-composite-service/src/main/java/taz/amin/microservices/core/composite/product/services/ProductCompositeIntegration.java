@@ -1,216 +1,467 @@
 package taz.amin.microservices.core.composite.product.services;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.util.UriTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import taz.amin.api.core.BatchItemResult;
+import taz.amin.api.core.CursorPage;
 import taz.amin.api.core.product.Product;
-import taz.amin.api.core.product.ProductService;
 import taz.amin.api.core.recommendation.Recommendation;
-import taz.amin.api.core.recommendation.RecommendationService;
 import taz.amin.api.core.review.Review;
-import taz.amin.api.core.review.ReviewService;
+import taz.amin.api.exceptions.DeadlineExceededException;
 import taz.amin.api.exceptions.InvalidInputException;
 import taz.amin.api.exceptions.NotFoundException;
-import taz.amin.util.http.HttpErrorInfo;
+import taz.amin.api.exceptions.ServiceUnavailableException;
 
-import java.io.IOException;
-import java.util.ArrayList;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
-
-import static org.springframework.http.HttpMethod.GET;
+import java.util.stream.Collectors;
 
 @Component
-public class ProductCompositeIntegration implements ProductService, RecommendationService, ReviewService {
+@EnableConfigurationProperties(DownstreamProperties.class)
+public class ProductCompositeIntegration {
     private static final Logger LOG = LoggerFactory.getLogger(ProductCompositeIntegration.class);
 
-    private final RestTemplate restTemplate;
-    private final ObjectMapper mapper;
-
-    private final String productServiceUrl;
-    private final String recommendationServiceUrl;
-    private final String reviewServiceUrl;
+    private static final ParameterizedTypeReference<CursorPage<Recommendation>> RECOMMENDATION_PAGE = new ParameterizedTypeReference<>() {};
+    private static final ParameterizedTypeReference<CursorPage<Review>> REVIEW_PAGE = new ParameterizedTypeReference<>() {};
+
+    private final WebClient productClient;
+    private final WebClient recommendationClient;
+    private final WebClient reviewClient;
+
+    // Per operation latency, tagged with the outcome, and payload size
+    private final DownstreamMetrics productMetrics;
+    private final DownstreamMetrics recommendationMetrics;
+    private final DownstreamMetrics reviewMetrics;
+
+    // Slow lookups are hedged with a second request, only if enabled
+    private final HedgingPolicy productHedging;
+    private final HedgingPolicy recommendationHedging;
+    private final HedgingPolicy reviewHedging;
+
+    // Concurrent single product lookups are collected into batch lookups, null if disabled
+    private final MicroBatcher<Integer, Product> productBatcher;
+    private final MicroBatcher<Integer, Collection<Recommendation>> recommendationBatcher;
+    private final MicroBatcher<Integer, Collection<Review>> reviewBatcher;
+
+    // Only the first page of the recommendations and reviews of a product is looked up, 0 if all of them are
+    private final int firstPageSize;
+
+    // URI templates are parsed once here instead of concatenating strings on every call
+    private final URI productServiceUri;
+    private final UriTemplate productUriTemplate;
+    private final UriTemplate productsUriTemplate;
+    private final URI recommendationServiceUri;
+    private final URI recommendationBatchUri;
+    private final UriTemplate recommendationUriTemplate;
+    private final UriTemplate recommendationsUriTemplate;
+    private final UriTemplate recommendationPageUriTemplate;
+    private final URI reviewServiceUri;
+    private final URI reviewBatchUri;
+    private final UriTemplate reviewUriTemplate;
+    private final UriTemplate reviewsUriTemplate;
+    private final UriTemplate reviewPageUriTemplate;
 
     @Autowired
     public ProductCompositeIntegration(
-            RestTemplate restTemplate,
-            ObjectMapper mapper,
-            @Value("${app.product-service.host}") String productServiceHost,
-            @Value("${app.product-service.port}") int productServicePort,
-            @Value("${app.recommendation-service.host}") String recommendationServiceHost,
-            @Value("${app.recommendation-service.port}") int recommendationServicePort,
-            @Value("${app.review-service.host}") String reviewServiceHost,
-            @Value("${app.review-service.port}") int reviewServicePort) {
-
-        this.restTemplate = restTemplate;
-        this.mapper = mapper;
-
-        productServiceUrl = "http://" + productServiceHost + ":" + productServicePort + "/product";
-        recommendationServiceUrl = "http://" + recommendationServiceHost + ":" + recommendationServicePort + "/recommendation";
-        reviewServiceUrl = "http://" + reviewServiceHost + ":" + reviewServicePort + "/review";
-    }
-
-    @Override
-    public Product createProduct(Product body) {
-
-        try {
-            String url = productServiceUrl;
-            LOG.debug("Will post a new product to URL: {}", url);
-
-            Product product = restTemplate.postForObject(url, body, Product.class);
-            LOG.debug("Created a product with id: {}", product.getProductId());
-
-            return product;
+            DownstreamWebClientFactory webClientFactory,
+            HedgingPolicyFactory hedgingPolicyFactory,
+            DownstreamProperties properties,
+            @Value("${app.product-composite.micro-batch.enabled:true}") boolean microBatchEnabled,
+            @Value("${app.product-composite.micro-batch.window:2ms}") Duration microBatchWindow,
+            @Value("${app.product-composite.micro-batch.max-size:50}") int microBatchMaxSize,
+            @Value("${app.product-composite.first-page-size:0}") int firstPageSize,
+            @Value("${app.page.max-limit:100}") int maxPageLimit) {
+
+        // One more item than the first page holds is looked up, to tell if there are more
+        if (firstPageSize >= maxPageLimit) {
+            LOG.warn("first-page-size = {} is not below the page max-limit = {} of the core services, uses {} instead", firstPageSize, maxPageLimit, maxPageLimit - 1);
+            firstPageSize = maxPageLimit - 1;
+        }
+        this.firstPageSize = firstPageSize;
+
+        productClient = webClientFactory.create("product-service", properties.getProductService());
+        recommendationClient = webClientFactory.create("recommendation-service", properties.getRecommendationService());
+        reviewClient = webClientFactory.create("review-service", properties.getReviewService());
+
+        productMetrics = webClientFactory.getMetrics("product-service");
+        recommendationMetrics = webClientFactory.getMetrics("recommendation-service");
+        reviewMetrics = webClientFactory.getMetrics("review-service");
+
+        productHedging = hedgingPolicyFactory.create("product-service");
+        recommendationHedging = hedgingPolicyFactory.create("recommendation-service");
+        reviewHedging = hedgingPolicyFactory.create("review-service");
+
+        String productServiceUrl = properties.getProductService().getBaseUrl() + "/product";
+        String recommendationServiceUrl = properties.getRecommendationService().getBaseUrl() + "/recommendation";
+        String reviewServiceUrl = properties.getReviewService().getBaseUrl() + "/review";
+
+        productServiceUri = URI.create(productServiceUrl);
+        productUriTemplate = new UriTemplate(productServiceUrl + "/{productId}");
+        productsUriTemplate = new UriTemplate(productServiceUrl + "?productIds={productIds}");
+        recommendationServiceUri = URI.create(recommendationServiceUrl);
+        recommendationBatchUri = URI.create(recommendationServiceUrl + "/batch");
+        recommendationUriTemplate = new UriTemplate(recommendationServiceUrl + "?productId={productId}");
+        recommendationsUriTemplate = new UriTemplate(recommendationServiceUrl + "?productIds={productIds}");
+        recommendationPageUriTemplate = new UriTemplate(recommendationServiceUrl + "?productId={productId}&limit={limit}");
+        reviewServiceUri = URI.create(reviewServiceUrl);
+        reviewBatchUri = URI.create(reviewServiceUrl + "/batch");
+        reviewUriTemplate = new UriTemplate(reviewServiceUrl + "?productId={productId}");
+        reviewsUriTemplate = new UriTemplate(reviewServiceUrl + "?productIds={productIds}");
+        reviewPageUriTemplate = new UriTemplate(reviewServiceUrl + "?productId={productId}&limit={limit}");
+
+        if (firstPageSize > 0) {
+            LOG.info("Looks up the first {} recommendations and reviews of a product only", firstPageSize);
+        }
 
-        } catch (HttpClientErrorException ex) {
-            throw handleHttpClientException(ex);
+        if (microBatchEnabled) {
+            LOG.info("Collects concurrent lookups into batches with window = {}, maxSize = {}", microBatchWindow, microBatchMaxSize);
+
+            productBatcher = new MicroBatcher<>("products", microBatchWindow, microBatchMaxSize,
+                    productIds -> getProducts(productIds).collectMap(Product::getProductId));
+            recommendationBatcher = new MicroBatcher<>("recommendations", microBatchWindow, microBatchMaxSize,
+                    productIds -> getRecommendations(productIds).collectMultimap(Recommendation::getProductId));
+            reviewBatcher = new MicroBatcher<>("reviews", microBatchWindow, microBatchMaxSize,
+                    productIds -> getReviews(productIds).collectMultimap(Review::getProductId));
+        } else {
+            productBatcher = null;
+            recommendationBatcher = null;
+            reviewBatcher = null;
         }
     }
 
-    @Override
-    public Product getProduct(int productId) {
-
-        try {
-            String url = productServiceUrl + "/" + productId;
-            LOG.debug("Will call the getProduct API on URL: {}", url);
-
-            Product product = restTemplate.getForObject(url, Product.class);
-            LOG.debug("Found a product with id: {}", product.getProductId());
+    /**
+     * @return the number of recommendations and reviews of a product that is included, 0 if all of them are.
+     * Up to one more of them is looked up, which only tells that there are more
+     */
+    public int getFirstPageSize() {
+        return firstPageSize;
+    }
 
-            return product;
+    public Mono<Product> createProduct(Product body) {
+        LOG.debug("Will post a new product to URL: {}", productServiceUri);
+
+        return productClient.post()
+                .uri(productServiceUri)
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(Product.class)
+                .doOnNext(product -> LOG.debug("Created a product with id: {}", product.getProductId()))
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .as(call -> productMetrics.timed("createProduct", call));
+    }
 
-        } catch (HttpClientErrorException ex) {
-            throw handleHttpClientException(ex);
+    public Mono<Product> getProduct(int productId) {
+        // Invalid product ids are sent on their own, so that they don't fail the lookups they would be batched with
+        if (productBatcher == null || productId < 1) {
+            return fetchProduct(productId);
         }
-    }
 
-    @Override
-    public void deleteProduct(int productId) {
-        try {
-            String url = productServiceUrl + "/" + productId;
-            LOG.debug("Will call the deleteProduct API on URL: {}", url);
+        return productBatcher.load(productId)
+                .switchIfEmpty(Mono.error(() -> new NotFoundException("No product found for productId: " + productId)));
+    }
 
-            restTemplate.delete(url);
+    private Mono<Product> fetchProduct(int productId) {
+        URI url = productUriTemplate.expand(productId);
+        LOG.debug("Will call the getProduct API on URL: {}", url);
+
+        return productClient.get()
+                .uri(url)
+                .retrieve()
+                .bodyToMono(Product.class)
+                .as(productHedging::hedge)
+                .doOnNext(product -> LOG.debug("Found a product with id: {}", product.getProductId()))
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .as(call -> productMetrics.timed("getProduct", call));
+    }
 
-        } catch (HttpClientErrorException ex) {
-            throw handleHttpClientException(ex);
+    /**
+     * Looks up several products with one call, products that are not found are left out of the result.
+     */
+    public Flux<Product> getProducts(Collection<Integer> productIds) {
+        if (productIds.isEmpty()) {
+            return Flux.empty();
         }
-    }
 
-    @Override
-    public Recommendation createRecommendation(Recommendation body) {
+        URI url = productsUriTemplate.expand(toParameterValue(productIds));
+        LOG.debug("Will call the getProducts API on URL: {}", url);
+
+        return productClient.get()
+                .uri(url)
+                .retrieve()
+                .bodyToFlux(Product.class)
+                .collectList()
+                .as(productHedging::hedge)
+                .flatMapIterable(products -> products)
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .as(call -> productMetrics.timed("getProducts", call));
+    }
 
-        try {
-            String url = recommendationServiceUrl;
-            LOG.debug("Will post a new recommendation to URL: {}", url);
+    public Mono<Void> deleteProduct(int productId) {
+        URI url = productUriTemplate.expand(productId);
+        LOG.debug("Will call the deleteProduct API on URL: {}", url);
 
-            Recommendation recommendation = restTemplate.postForObject(url, body, Recommendation.class);
-            LOG.debug("Created a recommendation with id: {}", recommendation.getProductId());
+        return productClient.delete()
+                .uri(url)
+                .retrieve()
+                .bodyToMono(Void.class)
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .as(call -> productMetrics.timed("deleteProduct", call));
+    }
 
-            return recommendation;
+    public Mono<Recommendation> createRecommendation(Recommendation body) {
+        LOG.debug("Will post a new recommendation to URL: {}", recommendationServiceUri);
+
+        return recommendationClient.post()
+                .uri(recommendationServiceUri)
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(Recommendation.class)
+                .doOnNext(recommendation -> LOG.debug("Created a recommendation with id: {}", recommendation.getProductId()))
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .as(call -> recommendationMetrics.timed("createRecommendation", call));
+    }
 
-        } catch (HttpClientErrorException ex) {
-            throw handleHttpClientException(ex);
-        }
+    /**
+     * Creates several recommendations with one call. If any of them could not be created, the
+     * first failure is returned as an error, after the others have been created.
+     */
+    public Mono<Void> createRecommendations(List<Recommendation> body) {
+        LOG.debug("Will post {} new recommendations to URL: {}", body.size(), recommendationBatchUri);
+
+        return recommendationClient.post()
+                .uri(recommendationBatchUri)
+                .bodyValue(body)
+                .retrieve()
+                .bodyToFlux(BatchItemResult.class)
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .as(this::failOnItemErrors)
+                .as(call -> recommendationMetrics.timed("createRecommendations", call));
     }
 
-    @Override
-    public List<Recommendation> getRecommendations(int productId) {
+    public Flux<Recommendation> getRecommendations(int productId) {
+        // The batch lookups have no limit per product, so a first page is looked up on its own
+        if (firstPageSize > 0) {
+            return fetchRecommendationPage(productId, firstPageSize + 1);
+        }
+        if (recommendationBatcher == null || productId < 1) {
+            return fetchRecommendations(productId);
+        }
 
-        try {
-            String url = recommendationServiceUrl + "?productId=" + productId;
+        return recommendationBatcher.load(productId).flatMapIterable(recommendations -> recommendations);
+    }
 
-            LOG.debug("Will call the getRecommendations API on URL: {}", url);
-            List<Recommendation> recommendations = restTemplate
-                    .exchange(url, GET, null, new ParameterizedTypeReference<List<Recommendation>>() {})
-                    .getBody();
+    private Flux<Recommendation> fetchRecommendations(int productId) {
+        URI url = recommendationUriTemplate.expand(productId);
+        LOG.debug("Will call the getRecommendations API on URL: {}", url);
+
+        return recommendationClient.get()
+                .uri(url)
+                .retrieve()
+                .bodyToFlux(Recommendation.class)
+                .collectList()
+                .as(recommendationHedging::hedge)
+                .flatMapIterable(recommendations -> recommendations)
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .as(call -> recommendationMetrics.timed("getRecommendations", call));
+    }
 
-            LOG.debug("Found {} recommendations for a product with id: {}", recommendations.size(), productId);
-            return recommendations;
+    private Flux<Recommendation> fetchRecommendationPage(int productId, int limit) {
+        URI url = recommendationPageUriTemplate.expand(productId, limit);
+        LOG.debug("Will call the getRecommendationPage API on URL: {}", url);
+
+        return recommendationClient.get()
+                .uri(url)
+                .retrieve()
+                .bodyToMono(RECOMMENDATION_PAGE)
+                .as(recommendationHedging::hedge)
+                .flatMapIterable(CursorPage::getItems)
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .as(call -> recommendationMetrics.timed("getRecommendationPage", call));
+    }
 
-        } catch (Exception ex) {
-            LOG.warn("Got an exception while requesting recommendations, return zero recommendations: {}", ex.getMessage());
-            return new ArrayList<>();
+    /**
+     * Looks up the recommendations of several products with one call.
+     */
+    public Flux<Recommendation> getRecommendations(Collection<Integer> productIds) {
+        if (productIds.isEmpty()) {
+            return Flux.empty();
         }
-    }
 
-    @Override
-    public void deleteRecommendations(int productId) {
-        try {
-            String url = recommendationServiceUrl + "?productId=" + productId;
-            LOG.debug("Will call the deleteRecommendations API on URL: {}", url);
+        URI url = recommendationsUriTemplate.expand(toParameterValue(productIds));
+        LOG.debug("Will call the getRecommendations API on URL: {}", url);
+
+        return recommendationClient.get()
+                .uri(url)
+                .retrieve()
+                .bodyToFlux(Recommendation.class)
+                .collectList()
+                .as(recommendationHedging::hedge)
+                .flatMapIterable(recommendations -> recommendations)
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .as(call -> recommendationMetrics.timed("getRecommendationsBatch", call));
+    }
 
-            restTemplate.delete(url);
+    public Mono<Void> deleteRecommendations(int productId) {
+        URI url = recommendationUriTemplate.expand(productId);
+        LOG.debug("Will call the deleteRecommendations API on URL: {}", url);
 
-        } catch (HttpClientErrorException ex) {
-            throw handleHttpClientException(ex);
-        }
+        return recommendationClient.delete()
+                .uri(url)
+                .retrieve()
+                .bodyToMono(Void.class)
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .as(call -> recommendationMetrics.timed("deleteRecommendations", call));
     }
 
-    @Override
-    public Review createReview(Review body) {
+    public Mono<Review> createReview(Review body) {
+        LOG.debug("Will post a new review to URL: {}", reviewServiceUri);
+
+        return reviewClient.post()
+                .uri(reviewServiceUri)
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(Review.class)
+                .doOnNext(review -> LOG.debug("Created a review with id: {}", review.getProductId()))
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .as(call -> reviewMetrics.timed("createReview", call));
+    }
 
-        try {
-            String url = reviewServiceUrl;
-            LOG.debug("Will post a new review to URL: {}", url);
+    /**
+     * Creates several reviews with one call. If any of them could not be created, the first
+     * failure is returned as an error, after the others have been created.
+     */
+    public Mono<Void> createReviews(List<Review> body) {
+        LOG.debug("Will post {} new reviews to URL: {}", body.size(), reviewBatchUri);
+
+        return reviewClient.post()
+                .uri(reviewBatchUri)
+                .bodyValue(body)
+                .retrieve()
+                .bodyToFlux(BatchItemResult.class)
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .as(this::failOnItemErrors)
+                .as(call -> reviewMetrics.timed("createReviews", call));
+    }
 
-            Review review = restTemplate.postForObject(url, body, Review.class);
-            LOG.debug("Created a review with id: {}", review.getProductId());
+    public Flux<Review> getReviews(int productId) {
+        // The batch lookups have no limit per product, so a first page is looked up on its own
+        if (firstPageSize > 0) {
+            return fetchReviewPage(productId, firstPageSize + 1);
+        }
+        if (reviewBatcher == null || productId < 1) {
+            return fetchReviews(productId);
+        }
 
-            return review;
+        return reviewBatcher.load(productId).flatMapIterable(reviews -> reviews);
+    }
 
-        } catch (HttpClientErrorException ex) {
-            throw handleHttpClientException(ex);
-        }
+    private Flux<Review> fetchReviews(int productId) {
+        URI url = reviewUriTemplate.expand(productId);
+        LOG.debug("Will call the getReviews API on URL: {}", url);
+
+        return reviewClient.get()
+                .uri(url)
+                .retrieve()
+                .bodyToFlux(Review.class)
+                .collectList()
+                .as(reviewHedging::hedge)
+                .flatMapIterable(reviews -> reviews)
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .as(call -> reviewMetrics.timed("getReviews", call));
     }
 
-    @Override
-    public List<Review> getReviews(int productId) {
+    private Flux<Review> fetchReviewPage(int productId, int limit) {
+        URI url = reviewPageUriTemplate.expand(productId, limit);
+        LOG.debug("Will call the getReviewPage API on URL: {}", url);
+
+        return reviewClient.get()
+                .uri(url)
+                .retrieve()
+                .bodyToMono(REVIEW_PAGE)
+                .as(reviewHedging::hedge)
+                .flatMapIterable(CursorPage::getItems)
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .as(call -> reviewMetrics.timed("getReviewPage", call));
+    }
 
-        try {
-            String url = reviewServiceUrl + "?productId=" + productId;
+    /**
+     * Looks up the reviews of several products with one call.
+     */
+    public Flux<Review> getReviews(Collection<Integer> productIds) {
+        if (productIds.isEmpty()) {
+            return Flux.empty();
+        }
 
-            LOG.debug("Will call the getReviews API on URL: {}", url);
-            List<Review> reviews = restTemplate
-                    .exchange(url, GET, null, new ParameterizedTypeReference<List<Review>>() {})
-                    .getBody();
+        URI url = reviewsUriTemplate.expand(toParameterValue(productIds));
+        LOG.debug("Will call the getReviews API on URL: {}", url);
+
+        return reviewClient.get()
+                .uri(url)
+                .retrieve()
+                .bodyToFlux(Review.class)
+                .collectList()
+                .as(reviewHedging::hedge)
+                .flatMapIterable(reviews -> reviews)
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .as(call -> reviewMetrics.timed("getReviewsBatch", call));
+    }
 
-            LOG.debug("Found {} reviews for a product with id: {}", reviews.size(), productId);
-            return reviews;
+    public Mono<Void> deleteReviews(int productId) {
+        URI url = reviewUriTemplate.expand(productId);
+        LOG.debug("Will call the deleteReviews API on URL: {}", url);
 
-        } catch (Exception ex) {
-            LOG.warn("Got an exception while requesting reviews, return zero reviews: {}", ex.getMessage());
-            return new ArrayList<>();
-        }
+        return reviewClient.delete()
+                .uri(url)
+                .retrieve()
+                .bodyToMono(Void.class)
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .as(call -> reviewMetrics.timed("deleteReviews", call));
     }
 
-    @Override
-    public void deleteReviews(int productId) {
-        try {
-            String url = reviewServiceUrl + "?productId=" + productId;
-            LOG.debug("Will call the deleteReviews API on URL: {}", url);
-
-            restTemplate.delete(url);
+    private Mono<Void> failOnItemErrors(Flux<BatchItemResult> results) {
+        return results
+                .filter(result -> result.getStatus() != HttpStatus.OK.value())
+                .next()
+                .flatMap(failure -> {
+                    LOG.debug("Batch item {} failed with status {}: {}", failure.getIndex(), failure.getStatus(), failure.getMessage());
+                    RuntimeException ex = (failure.getStatus() == HttpStatus.UNPROCESSABLE_ENTITY.value())
+                            ? new InvalidInputException(failure.getMessage())
+                            : new IllegalStateException(failure.getMessage());
+                    return Mono.error(ex);
+                });
+    }
 
-        } catch (HttpClientErrorException ex) {
-            throw handleHttpClientException(ex);
-        }
+    private static String toParameterValue(Collection<Integer> productIds) {
+        return productIds.stream().map(String::valueOf).collect(Collectors.joining(","));
     }
 
-    private RuntimeException handleHttpClientException(HttpClientErrorException ex) {
+    /**
+     * 404 and 422 responses are mapped to exceptions by the web clients already, see {@link DownstreamWebClientFactory}.
+     *
+     * A core service answers 504 when the deadline passed while it worked on the request, and 503
+     * when it is unavailable, these are passed on to the caller as such.
+     */
+    private Throwable handleException(WebClientResponseException ex) {
         switch (HttpStatus.resolve(ex.getStatusCode().value())) {
 
-            case NOT_FOUND:
-                return new NotFoundException(getErrorMessage(ex));
+            case GATEWAY_TIMEOUT:
+                return new DeadlineExceededException(ex.getMessage(), ex);
 
-            case UNPROCESSABLE_ENTITY:
-                return new InvalidInputException(getErrorMessage(ex));
+            case SERVICE_UNAVAILABLE:
+                return new ServiceUnavailableException(ex.getMessage(), ex);
 
             default:
                 LOG.warn("Got an unexpected HTTP error: {}, will rethrow it", ex.getStatusCode());
@@ -218,12 +469,4 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
                 return ex;
         }
     }
-
-    private String getErrorMessage(HttpClientErrorException ex) {
-        try {
-            return mapper.readValue(ex.getResponseBodyAsString(), HttpErrorInfo.class).getMessage();
-        } catch (IOException ioex) {
-            return ex.getMessage();
-        }
-    }
-}
\ No newline at end of file
+}
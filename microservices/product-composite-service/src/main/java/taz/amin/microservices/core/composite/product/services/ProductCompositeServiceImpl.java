@@ -3,120 +3,450 @@ package taz.amin.microservices.core.composite.product.services;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 import taz.amin.api.composite.product.*;
+import taz.amin.api.core.Deadline;
+import taz.amin.api.core.ServerTiming;
 import taz.amin.api.core.product.Product;
 import taz.amin.api.core.recommendation.Recommendation;
 import taz.amin.api.core.review.Review;
+import taz.amin.api.exceptions.InvalidInputException;
 import taz.amin.api.exceptions.NotFoundException;
+import taz.amin.util.http.EntityTags;
 import taz.amin.util.http.ServiceUtil;
 
-import java.util.List;
+import java.util.*;
 import java.util.stream.Collectors;
 
+import static org.springframework.http.HttpStatus.*;
+import static taz.amin.api.composite.product.ProductAggregateSection.*;
+import static taz.amin.microservices.core.composite.product.services.ProductAggregateAssembler.firstPage;
+import static taz.amin.microservices.core.composite.product.services.ProductAggregateAssembler.firstServiceAddress;
+import static taz.amin.microservices.core.composite.product.services.ProductAggregateAssembler.isTruncated;
+import static taz.amin.microservices.core.composite.product.services.ProductAggregateAssembler.toRecommendationSummaries;
+import static taz.amin.microservices.core.composite.product.services.ProductAggregateAssembler.toReviewSummaries;
+
 @RestController
 public class ProductCompositeServiceImpl implements ProductCompositeService {
     private static final Logger LOG = LoggerFactory.getLogger(ProductCompositeServiceImpl.class);
+    private static final Set<String> ALL_PARTS = Set.of(PRODUCT, RECOMMENDATIONS, REVIEWS);
     private final ServiceUtil serviceUtil;
     private ProductCompositeIntegration integration;
+    private final ProductAggregateCache cache;
+    private final LastKnownParts lastKnownParts;
+    private final SingleFlight<Integer, Tuple2<TaggedProductAggregate, ServerTiming>> aggregatesInFlight = new SingleFlight<>();
+    private final int maxBatchSize;
+    private final int writeConcurrency;
+    private final int writeBatchSize;
 
     @Autowired
     public ProductCompositeServiceImpl(
-            ServiceUtil serviceUtil, ProductCompositeIntegration integration) {
+            ServiceUtil serviceUtil,
+            ProductCompositeIntegration integration,
+            ProductAggregateCache cache,
+            LastKnownParts lastKnownParts,
+            @Value("${app.product-composite.batch.max-size:100}") int maxBatchSize,
+            @Value("${app.product-composite.write-concurrency:8}") int writeConcurrency,
+            @Value("${app.product-composite.write-batch-size:100}") int writeBatchSize) {
 
         this.serviceUtil = serviceUtil;
         this.integration = integration;
+        this.cache = cache;
+        this.lastKnownParts = lastKnownParts;
+        this.maxBatchSize = maxBatchSize;
+        this.writeConcurrency = writeConcurrency;
+        this.writeBatchSize = writeBatchSize;
     }
 
     @Override
-    public void createProduct(ProductAggregate body) {
-        try {
+    public Mono<Void> createProduct(ProductAggregate body) {
 
-            LOG.debug("createCompositeProduct: creates a new composite entity for productId: {}", body.getProductId());
+        LOG.debug("createCompositeProduct: creates a new composite entity for productId: {}", body.getProductId());
 
-            Product product = new Product(body.getProductId(), body.getName(), body.getWeight(), null);
-            integration.createProduct(product);
+        Product product = new Product(body.getProductId(), body.getName(), body.getWeight(), null);
 
-            if (body.getRecommendations() != null) {
-                body.getRecommendations().forEach(r -> {
-                    Recommendation recommendation = new Recommendation(body.getProductId(), r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent(), null);
-                    integration.createRecommendation(recommendation);
-                });
+        Flux<Recommendation> recommendations = (body.getRecommendations() == null) ? Flux.empty() :
+                Flux.fromIterable(body.getRecommendations())
+                        .map(r -> new Recommendation(body.getProductId(), r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent(), null));
+
+        Flux<Review> reviews = (body.getReviews() == null) ? Flux.empty() :
+                Flux.fromIterable(body.getReviews())
+                        .map(r -> new Review(body.getProductId(), r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent(), null));
+
+        // The product is created first, so that a duplicate product fails before any child is written.
+        // The recommendations and reviews are then written with batch calls of up to writeBatchSize
+        // children each, at most writeConcurrency batch calls at a time
+        Flux<Mono<?>> childWrites = Flux.concat(
+                recommendations.buffer(writeBatchSize).<Mono<?>>map(integration::createRecommendations),
+                reviews.buffer(writeBatchSize).<Mono<?>>map(integration::createReviews));
+
+        return integration.createProduct(product)
+                .thenMany(childWrites.flatMap(write -> write, writeConcurrency))
+                .then()
+                .doFirst(() -> invalidate(body.getProductId()))
+                .doFinally(signal -> invalidate(body.getProductId()))
+                .doOnSuccess(v -> LOG.debug("createCompositeProduct: composite entities created for productId: {}", body.getProductId()))
+                .doOnError(ex -> LOG.warn("createCompositeProduct failed", ex));
+    }
+
+    @Override
+    public Mono<ResponseEntity<ProductAggregate>> getProduct(int productId, List<String> include) {
+
+        Set<String> parts = includedParts(include);
+
+        LOG.debug("getCompositeProduct: lookup a product aggregate for productId: {}, parts: {}", productId, parts);
+
+        // The response is tagged, so a request with a matching If-None-Match header gets a 304 without the aggregate being serialized
+        return lookupProductAggregate(productId, parts)
+                .transformDeferredContextual((aggregate, context) -> {
+                    ServerTiming timing = context.getOrDefault(ServerTiming.class, null);
+                    // The body is serialized before the response is committed, which ends the step
+                    return (timing == null) ? aggregate : aggregate.doOnNext(tagged -> timing.start("serialize"));
+                })
+                .map(tagged -> EntityTags.ok(tagged.getEtag()).body(tagged.getAggregate()));
+    }
+
+    private Mono<TaggedProductAggregate> lookupProductAggregate(int productId, Set<String> parts) {
+
+        return Mono.defer(() -> {
+            TaggedProductAggregate cached = cache.get(productId);
+            if (cached != null) {
+                LOG.debug("getCompositeProduct: found a cached product aggregate for productId: {}", productId);
+                return Mono.just(onlyParts(cached, parts));
             }
 
-            if (body.getReviews() != null) {
-                body.getReviews().forEach(r -> {
-                    Review review = new Review(body.getProductId(), r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent(), null);
-                    integration.createReview(review);
-                });
+            // Only complete aggregates are cached, a partial view is assembled on its own from the parts it includes
+            if (!parts.equals(ALL_PARTS)) {
+                return assembleProductAggregate(productId, parts);
             }
 
-            LOG.debug("createCompositeProduct: composite entities created for productId: {}", body.getProductId());
+            // Concurrent cache misses for the same productId share one set of downstream calls, that run under the
+            // deadline of the caller that started them. A caller only joins calls that were started with the same
+            // time budget, so that one hurried caller does not cut the lookup short for the others
+            return Mono.deferContextual(context -> {
+                Deadline deadline = context.getOrDefault(Deadline.class, null);
+                ServerTiming timing = context.getOrDefault(ServerTiming.class, null);
+                long budget = (deadline == null) ? Long.MAX_VALUE : deadline.getTimeout().toNanos();
+                return aggregatesInFlight.execute(productId, budget, () -> {
+                    long readToken = cache.startRead();
+                    // The shared calls are timed on their own, for every caller to add to its Server-Timing header
+                    ServerTiming sharedTiming = new ServerTiming();
+                    return assembleProductAggregate(productId, ALL_PARTS)
+                            .doOnNext(tagged -> {
+                                // Partial and stale aggregates are not cached, the next request gets another chance at a fresh one
+                                if (isComplete(tagged.getAggregate())) {
+                                    cache.put(productId, tagged, readToken);
+                                }
+                            })
+                            .map(tagged -> Tuples.of(tagged, sharedTiming))
+                            .contextWrite(shared -> (timing == null) ? shared : shared.put(ServerTiming.class, sharedTiming));
+                }).map(shared -> {
+                    if (timing != null) {
+                        timing.addAll(shared.getT2());
+                    }
+                    return shared.getT1();
+                });
+            });
+        });
+    }
+
+    /**
+     * Parts that are not included are not looked up, and are left out of the aggregate without being marked as missing.
+     */
+    private Mono<TaggedProductAggregate> assembleProductAggregate(int productId, Set<String> parts) {
+
+        return Mono.deferContextual(context -> {
+            Deadline deadline = context.getOrDefault(Deadline.class, null);
+            ServerTiming timing = context.getOrDefault(ServerTiming.class, null);
+            Mono<StaleWhileRevalidate.Result<List<Recommendation>>> recommendations = parts.contains(RECOMMENDATIONS)
+                    ? lookupRecommendations(productId, deadline) : Mono.just(StaleWhileRevalidate.Result.missing());
+            Mono<StaleWhileRevalidate.Result<List<Review>>> reviews = parts.contains(REVIEWS)
+                    ? lookupReviews(productId, deadline) : Mono.just(StaleWhileRevalidate.Result.missing());
+            return Mono.zip(lookupProduct(productId, deadline), recommendations, reviews)
+                    .map(t -> {
+                        long start = System.nanoTime();
+                        List<String> stale = new ArrayList<>();
+                        if (t.getT2().isStale()) {
+                            stale.add("recommendations");
+                        }
+                        if (t.getT3().isStale()) {
+                            stale.add("reviews");
+                        }
+                        TaggedProductAggregate tagged = ProductAggregateAssembler.assemble(t.getT1(), t.getT2().getValue(), t.getT3().getValue(), serviceUtil.getServiceAddress(), stale, parts, integration.getFirstPageSize());
+                        if (timing != null) {
+                            timing.add("aggregate", null, System.nanoTime() - start);
+                        }
+                        return tagged;
+                    });
+        }).doOnError(ex -> LOG.warn("getCompositeProduct failed: {}", ex.toString()));
+    }
 
-        } catch (RuntimeException re) {
-            LOG.warn("createCompositeProduct failed", re);
-            throw re;
+    /**
+     * @param include the parts to include besides the product, all of them if null
+     */
+    private static Set<String> includedParts(List<String> include) {
+        if (include == null) {
+            return ALL_PARTS;
         }
+
+        Set<String> parts = new HashSet<>();
+        parts.add(PRODUCT);
+        include.stream().filter(part -> !part.isBlank()).forEach(part -> {
+            if (!ALL_PARTS.contains(part)) {
+                throw new InvalidInputException("Invalid include: " + part + ", must be one of: product, recommendations, reviews");
+            }
+            parts.add(part);
+        });
+        return parts;
+    }
+
+    /**
+     * @param tagged a complete aggregate, as found in the cache
+     */
+    private static TaggedProductAggregate onlyParts(TaggedProductAggregate tagged, Set<String> parts) {
+        if (parts.equals(ALL_PARTS)) {
+            return tagged;
+        }
+
+        boolean recommendations = parts.contains(RECOMMENDATIONS);
+        boolean reviews = parts.contains(REVIEWS);
+        ProductAggregate aggregate = tagged.getAggregate();
+        ServiceAddresses addresses = aggregate.getServiceAddresses();
+        ProductAggregate view = new ProductAggregate(
+                aggregate.getProductId(),
+                aggregate.getName(),
+                aggregate.getWeight(),
+                recommendations ? aggregate.getRecommendations() : null,
+                reviews ? aggregate.getReviews() : null,
+                new ServiceAddresses(addresses.getCmp(), addresses.getPro(), reviews ? addresses.getRev() : "", recommendations ? addresses.getRec() : ""),
+                new ArrayList<>(),
+                new ArrayList<>(),
+                aggregate.getTruncated().stream().filter(parts::contains).collect(Collectors.toList()));
+        return new TaggedProductAggregate(view, tagged.getProductTag(),
+                recommendations ? tagged.getRecommendationsTag() : null,
+                reviews ? tagged.getReviewsTag() : null);
     }
 
     @Override
-    public ProductAggregate getProduct(int productId) {
+    public Flux<ProductAggregateSection> getProductSections(int productId, List<String> include) {
+
+        Set<String> parts = includedParts(include);
+        int firstPageSize = integration.getFirstPageSize();
+
+        LOG.debug("getCompositeProductSections: streams a product aggregate for productId: {}, parts: {}", productId, parts);
+
+        return Flux.deferContextual(context -> {
+            ProductAggregate cached = Optional.ofNullable(cache.get(productId)).map(TaggedProductAggregate::getAggregate).orElse(null);
+            if (cached != null) {
+                LOG.debug("getCompositeProductSections: found a cached product aggregate for productId: {}", productId);
+                return Flux.just(
+                        productSection(productId, cached.getName(), cached.getWeight(), cached.getServiceAddresses().getPro()),
+                        new ProductAggregateSection(RECOMMENDATIONS, productId, null, null, cached.getRecommendations(), null, cached.getServiceAddresses().getRec(), "fresh",
+                                cached.getTruncated().contains(RECOMMENDATIONS)),
+                        new ProductAggregateSection(REVIEWS, productId, null, null, null, cached.getReviews(), cached.getServiceAddresses().getRev(), "fresh",
+                                cached.getTruncated().contains(REVIEWS)))
+                        .filter(section -> parts.contains(section.getSection()));
+            }
+
+            // All three lookups start at once. mergeSequential sends the product section first, and
+            // the recommendations and reviews sections in the order they arrive after that
+            Deadline deadline = context.getOrDefault(Deadline.class, null);
+            Mono<ProductAggregateSection> product = lookupProduct(productId, deadline)
+                    .map(p -> productSection(productId, p.getName(), p.getWeight(), p.getServiceAddress()));
+            Mono<ProductAggregateSection> recommendations = !parts.contains(RECOMMENDATIONS) ? Mono.empty() : lookupRecommendations(productId, deadline)
+                    .map(result -> new ProductAggregateSection(RECOMMENDATIONS, productId, null, null,
+                            toRecommendationSummaries(firstPage(result.getValue(), firstPageSize)), null, firstServiceAddress(result.getValue(), Recommendation::getServiceAddress), sectionStatus(result),
+                            isTruncated(result.getValue(), firstPageSize)));
+            Mono<ProductAggregateSection> reviews = !parts.contains(REVIEWS) ? Mono.empty() : lookupReviews(productId, deadline)
+                    .map(result -> new ProductAggregateSection(REVIEWS, productId, null, null,
+                            null, toReviewSummaries(firstPage(result.getValue(), firstPageSize)), firstServiceAddress(result.getValue(), Review::getServiceAddress), sectionStatus(result),
+                            isTruncated(result.getValue(), firstPageSize)));
 
-        Product product = integration.getProduct(productId);
-        if (product == null) {
-            throw new NotFoundException("No product found for productId: " + productId);
+            return Flux.mergeSequential(product, Flux.merge(recommendations, reviews));
+        }).doOnError(ex -> LOG.warn("getCompositeProductSections failed: {}", ex.toString()));
+    }
+
+    private Mono<Product> lookupProduct(int productId, Deadline deadline) {
+        return timed("product", withinDeadline(deadline, "product", integration.getProduct(productId)
+                .switchIfEmpty(Mono.error(() -> new NotFoundException("No product found for productId: " + productId)))));
+    }
+
+    private Mono<StaleWhileRevalidate.Result<List<Recommendation>>> lookupRecommendations(int productId, Deadline deadline) {
+        return timed("recommendations", lastKnownParts.getRecommendations().get(productId, deadline, () -> integration.getRecommendations(productId).collectList()));
+    }
+
+    private Mono<StaleWhileRevalidate.Result<List<Review>>> lookupReviews(int productId, Deadline deadline) {
+        return timed("reviews", lastKnownParts.getReviews().get(productId, deadline, () -> integration.getReviews(productId).collectList()));
+    }
+
+    private static ProductAggregateSection productSection(int productId, String name, int weight, String serviceAddress) {
+        return new ProductAggregateSection(PRODUCT, productId, name, weight, null, null, serviceAddress, "fresh", null);
+    }
+
+    private static String sectionStatus(StaleWhileRevalidate.Result<?> result) {
+        return (result.getValue() == null) ? "missing" : result.isStale() ? "stale" : "fresh";
+    }
+
+    @Override
+    public Flux<ProductAggregateEntry> getProducts(List<Integer> productIds) {
+
+        Set<Integer> distinctIds = new LinkedHashSet<>(productIds);
+        if (distinctIds.size() > maxBatchSize) {
+            throw new InvalidInputException("Too many productIds: " + distinctIds.size() + ", max is: " + maxBatchSize);
         }
 
-        List<Recommendation> recommendations = integration.getRecommendations(productId);
+        LOG.debug("getCompositeProducts: lookup product aggregates for {} productIds", distinctIds.size());
+
+        // Serve what we can from the cache and fetch the rest with one lookup per core service
+        Map<Integer, ProductAggregate> found = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        distinctIds.forEach(productId -> {
+            TaggedProductAggregate cached = cache.get(productId);
+            if (cached != null) {
+                found.put(productId, cached.getAggregate());
+            } else if (productId >= 1) {
+                missing.add(productId);
+            }
+        });
+
+        Mono<Map<Integer, ProductAggregate>> fetched = missing.isEmpty() ? Mono.just(Map.of()) : Mono.deferContextual(context -> {
+            Deadline deadline = context.getOrDefault(Deadline.class, null);
+            ServerTiming timing = context.getOrDefault(ServerTiming.class, null);
+            long readToken = cache.startRead();
+            long recommendationsReadToken = lastKnownParts.getRecommendations().startRead();
+            long reviewsReadToken = lastKnownParts.getReviews().startRead();
+            return Mono.zip(
+                            timed("products", withinDeadline(deadline, "products", integration.getProducts(missing).collectMap(Product::getProductId))),
+                            timed("recommendations", optionalPart(deadline, "recommendations", integration.getRecommendations(missing).collectMultimap(Recommendation::getProductId))),
+                            timed("reviews", optionalPart(deadline, "reviews", integration.getReviews(missing).collectMultimap(Review::getProductId))))
+                    .map(t -> {
+                        long start = System.nanoTime();
+                        Map<Integer, ProductAggregate> aggregates = new HashMap<>();
+                        t.getT1().forEach((productId, product) -> {
+                            List<String> stale = new ArrayList<>();
+                            List<Recommendation> recommendations = t.getT2()
+                                    .map(byProductId -> toList(byProductId.get(productId)))
+                                    .map(fresh -> remember(lastKnownParts.getRecommendations(), productId, fresh, recommendationsReadToken))
+                                    .orElseGet(() -> lastKnown(lastKnownParts.getRecommendations(), productId, "recommendations", stale));
+                            List<Review> reviews = t.getT3()
+                                    .map(byProductId -> toList(byProductId.get(productId)))
+                                    .map(fresh -> remember(lastKnownParts.getReviews(), productId, fresh, reviewsReadToken))
+                                    .orElseGet(() -> lastKnown(lastKnownParts.getReviews(), productId, "reviews", stale));
 
-        List<Review> reviews = integration.getReviews(productId);
+                            TaggedProductAggregate tagged = ProductAggregateAssembler.assemble(product, recommendations, reviews, serviceUtil.getServiceAddress(), stale, ALL_PARTS, integration.getFirstPageSize());
+                            if (isComplete(tagged.getAggregate())) {
+                                cache.put(productId, tagged, readToken);
+                            }
+                            aggregates.put(productId, tagged.getAggregate());
+                        });
+                        if (timing != null) {
+                            timing.add("aggregate", null, System.nanoTime() - start);
+                        }
+                        return aggregates;
+                    });
+        });
 
-        return createProductAggregate(product, recommendations, reviews, serviceUtil.getServiceAddress());
+        return fetched
+                .flatMapIterable(aggregates -> {
+                    found.putAll(aggregates);
+                    return distinctIds.stream().map(productId -> toEntry(productId, found.get(productId))).collect(Collectors.toList());
+                })
+                .doOnError(ex -> LOG.warn("getCompositeProducts failed: {}", ex.toString()));
     }
 
     @Override
-    public void deleteProduct(int productId) {
+    public Mono<Void> deleteProduct(int productId) {
 
         LOG.debug("deleteCompositeProduct: Deletes a product aggregate for productId: {}", productId);
 
-        integration.deleteProduct(productId);
+        return Mono.when(
+                        integration.deleteProduct(productId),
+                        integration.deleteRecommendations(productId),
+                        integration.deleteReviews(productId))
+                .doFirst(() -> invalidate(productId))
+                .doFinally(signal -> invalidate(productId))
+                .doOnSuccess(v -> LOG.debug("deleteCompositeProduct: aggregate entities deleted for productId: {}", productId))
+                .doOnError(ex -> LOG.warn("deleteCompositeProduct failed: {}", ex.toString()));
+    }
 
-        integration.deleteRecommendations(productId);
+    private ProductAggregateEntry toEntry(int productId, ProductAggregate aggregate) {
+        if (productId < 1) {
+            return new ProductAggregateEntry(productId, UNPROCESSABLE_ENTITY.value(), "Invalid productId: " + productId, null);
+        }
+        if (aggregate == null) {
+            return new ProductAggregateEntry(productId, NOT_FOUND.value(), "No product found for productId: " + productId, null);
+        }
+        return new ProductAggregateEntry(productId, OK.value(), null, aggregate);
+    }
 
-        integration.deleteReviews(productId);
+    /**
+     * Reports the time the request waited for the part in the Server-Timing header, if it is enabled.
+     */
+    private static <T> Mono<T> timed(String part, Mono<T> lookup) {
+        return Mono.deferContextual(context -> {
+            ServerTiming timing = context.getOrDefault(ServerTiming.class, null);
+            if (timing == null) {
+                return lookup;
+            }
+            // Before the result is passed on, which may commit the response
+            long start = System.nanoTime();
+            return lookup
+                    .doOnSuccess(result -> timing.add(part, null, System.nanoTime() - start))
+                    .doOnError(ex -> timing.add(part, null, System.nanoTime() - start));
+        });
+    }
 
-        LOG.debug("deleteCompositeProduct: aggregate entities deleted for productId: {}", productId);
+    private static <T> Mono<T> withinDeadline(Deadline deadline, String part, Mono<T> lookup) {
+        return (deadline == null) ? lookup : deadline.limit(lookup, part);
     }
 
-    private ProductAggregate createProductAggregate(
-            Product product,
-            List<Recommendation> recommendations,
-            List<Review> reviews,
-            String serviceAddress) {
+    /**
+     * Recommendations and reviews are optional parts of an aggregate. If they fail or don't arrive
+     * before the deadline, an empty result is returned so that the last known parts can be used
+     * instead, or a partial aggregate can be created.
+     */
+    private static <T> Mono<Optional<T>> optionalPart(Deadline deadline, String part, Mono<T> lookup) {
+        return withinDeadline(deadline, part, lookup)
+                .map(Optional::of)
+                .onErrorResume(ex -> {
+                    LOG.warn("Got an exception while requesting {}, returns a partial response without them: {}", part, ex.toString());
+                    return Mono.just(Optional.empty());
+                });
+    }
 
-        // 1. Setup product info
-        int productId = product.getProductId();
-        String name = product.getName();
-        int weight = product.getWeight();
+    private static <T> List<T> remember(StaleWhileRevalidate<Integer, List<T>> lastKnown, int productId, List<T> fresh, long readToken) {
+        lastKnown.put(productId, fresh, readToken);
+        return fresh;
+    }
 
-        // 2. Copy summary recommendation info, if available
-        List<RecommendationSummary> recommendationSummaries =
-                (recommendations == null) ? null : recommendations.stream()
-                        .map(r -> new RecommendationSummary(r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent()))
-                        .collect(Collectors.toList());
+    /**
+     * @return the last known part of the product, which is then added to the stale parts, or null if there is none
+     */
+    private static <T> List<T> lastKnown(StaleWhileRevalidate<Integer, List<T>> lastKnown, int productId, String part, List<String> stale) {
+        List<T> items = lastKnown.getLastKnown(productId);
+        if (items != null) {
+            stale.add(part);
+        }
+        return items;
+    }
 
-        // 3. Copy summary review info, if available
-        List<ReviewSummary> reviewSummaries =
-                (reviews == null) ? null : reviews.stream()
-                        .map(r -> new ReviewSummary(r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent()))
-                        .collect(Collectors.toList());
+    private static boolean isComplete(ProductAggregate aggregate) {
+        return aggregate.getMissing().isEmpty() && aggregate.getStale().isEmpty();
+    }
 
-        // 4. Create info regarding the involved microservices addresses
-        String productAddress = product.getServiceAddress();
-        String reviewAddress = (reviews != null && reviews.size() > 0) ? reviews.get(0).getServiceAddress() : "";
-        String recommendationAddress = (recommendations != null && recommendations.size() > 0) ? recommendations.get(0).getServiceAddress() : "";
-        ServiceAddresses serviceAddresses = new ServiceAddresses(serviceAddress, productAddress, reviewAddress, recommendationAddress);
+    private static <T> List<T> toList(Collection<T> items) {
+        return (items == null) ? new ArrayList<>() : new ArrayList<>(items);
+    }
 
-        return new ProductAggregate(productId, name, weight, recommendationSummaries, reviewSummaries, serviceAddresses);
+    private void invalidate(int productId) {
+        cache.invalidate(productId);
+        lastKnownParts.invalidate(productId);
+        aggregatesInFlight.forget(productId);
     }
 }
@@ -0,0 +1,68 @@
+package taz.amin.microservices.core.composite.product.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent lookups of the same key.
+ *
+ * The first caller for a key starts the lookup, callers that arrive while it is still in flight
+ * subscribe to the same pending result instead of starting their own. Once the lookup completes,
+ * successfully or not, the key is released and the next caller starts a new lookup.
+ */
+public class SingleFlight<K, V> {
+    private static final Logger LOG = LoggerFactory.getLogger(SingleFlight.class);
+
+    private final ConcurrentMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> lookup) {
+        return execute(key, 0, lookup);
+    }
+
+    /**
+     * @param budget how long the caller may wait for the result. It only joins a lookup that was started
+     *               with the same budget, neither cut short by a hurried caller nor outlasting its own.
+     *               Otherwise it starts one that later callers with its budget join instead
+     */
+    public Mono<V> execute(K key, long budget, Supplier<Mono<V>> lookup) {
+        return Mono.defer(() -> {
+            Flight<V> flight = inFlight.compute(key, (k, pending) -> {
+                if (pending != null && pending.budget == budget) {
+                    LOG.debug("Joins the lookup already in flight for key: {}", key);
+                    return pending;
+                }
+
+                // cache() makes all subscribers share one execution, the lookup keeps running even if
+                // the caller that started it goes away while others are still waiting for the result
+                Flight<V> started = new Flight<>(budget);
+                started.result = Mono.defer(lookup)
+                        .doFinally(signal -> inFlight.remove(key, started))
+                        .cache();
+                return started;
+            });
+            return flight.result;
+        });
+    }
+
+    /**
+     * Detaches any lookup in flight for the key, so that later callers do not get a result that
+     * was read before a write to the same key.
+     */
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    private static final class Flight<V> {
+        private final long budget;
+        private Mono<V> result;
+
+        private Flight(long budget) {
+            this.budget = budget;
+        }
+    }
+}
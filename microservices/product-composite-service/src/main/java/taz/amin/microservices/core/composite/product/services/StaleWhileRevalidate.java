@@ -0,0 +1,150 @@
+package taz.amin.microservices.core.composite.product.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import taz.amin.api.core.Deadline;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the last successfully fetched value per key, to fall back on when a fresh lookup fails
+ * or is slow.
+ *
+ * If there is a last known value, a lookup waits at most maxWait for a fresh one. If it fails or
+ * takes longer, the last known value is returned marked as stale, and the lookup keeps running
+ * in the background to refresh it for the next caller. Without a last known value, the lookup
+ * is limited by the request deadline only. The last known values are published as "cache.*"
+ * metrics with the name of the instance as the cache tag.
+ *
+ * An invalidation drops the last known values, and detaches the refreshes that are in flight: their
+ * results are not stored, and later callers start a new refresh instead of joining one of them.
+ */
+public class StaleWhileRevalidate<K, V> {
+    private static final Logger LOG = LoggerFactory.getLogger(StaleWhileRevalidate.class);
+
+    private final String name;
+    private final boolean enabled;
+    private final Duration maxWait;
+    private final Cache<K, V> lastKnown;
+    // Keyed by the read token too, so that a caller never joins a refresh that was started before an invalidation
+    private final SingleFlight<Map.Entry<K, Long>, V> refreshes = new SingleFlight<>();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public StaleWhileRevalidate(String name, MeterRegistry registry, boolean enabled, long maxSize, Duration maxAge, Duration maxWait) {
+        this.name = name;
+        this.enabled = enabled;
+        this.maxWait = maxWait;
+        this.lastKnown = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(maxAge)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(registry, lastKnown, name);
+    }
+
+    public Mono<Result<V>> get(K key, Deadline deadline, Supplier<Mono<V>> lookup) {
+        return Mono.defer(() -> {
+            long readToken = startRead();
+            V last = getLastKnown(key);
+
+            if (last == null) {
+                Mono<V> fresh = lookup.get().doOnNext(value -> put(key, value, readToken));
+                return ((deadline == null) ? fresh : deadline.limit(fresh, name))
+                        .map(Result::fresh)
+                        .onErrorResume(ex -> {
+                            LOG.warn("Got an exception while requesting {}, and has no earlier result to fall back on: {}", name, ex.toString());
+                            return Mono.just(Result.missing());
+                        });
+            }
+
+            // The refresh is subscribed to outside of this request, so that it completes and updates
+            // the last known value even if this request stops waiting for it
+            Mono<V> refresh = refreshes.execute(Map.entry(key, readToken), () -> lookup.get().doOnNext(value -> put(key, value, readToken)));
+            refresh.subscribe(value -> {}, ex -> LOG.debug("Background refresh of {} for key {} failed: {}", name, key, ex.toString()));
+
+            Duration wait = (deadline == null || deadline.remaining().compareTo(maxWait) > 0) ? maxWait : deadline.remaining();
+            return refresh.timeout(wait)
+                    .map(Result::fresh)
+                    .onErrorResume(ex -> {
+                        LOG.warn("No fresh {} for key {}, returns the last known result: {}", name, key, ex.toString());
+                        return Mono.just(Result.stale(last));
+                    });
+        });
+    }
+
+    /**
+     * @return a token to pass to {@link #put(Object, Object, long)} once the value has been fetched
+     */
+    public long startRead() {
+        return invalidations.get();
+    }
+
+    public V getLastKnown(K key) {
+        return enabled ? lastKnown.getIfPresent(key) : null;
+    }
+
+    public void put(K key, V value, long readToken) {
+        // Dropping the value of a read from before an invalidation afterwards would drop a newer one too
+        if (!enabled || invalidations.get() != readToken) {
+            return;
+        }
+        lastKnown.put(key, value);
+
+        // A write may have raced with the read, drop the value again if so
+        if (invalidations.get() != readToken) {
+            lastKnown.invalidate(key);
+        }
+    }
+
+    public void invalidate(K key) {
+        invalidations.incrementAndGet();
+        lastKnown.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        lastKnown.invalidateAll();
+    }
+
+    /**
+     * A fresh value, a stale value, or no value at all if the lookup failed without a fallback.
+     */
+    public static final class Result<V> {
+        private final V value;
+        private final boolean stale;
+
+        private Result(V value, boolean stale) {
+            this.value = value;
+            this.stale = stale;
+        }
+
+        public static <V> Result<V> fresh(V value) {
+            return new Result<>(value, false);
+        }
+
+        public static <V> Result<V> stale(V value) {
+            return new Result<>(value, true);
+        }
+
+        public static <V> Result<V> missing() {
+            return new Result<>(null, false);
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public boolean isStale() {
+            return stale;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package taz.amin.microservices.core.composite.product.services;
+
+import taz.amin.api.composite.product.ProductAggregate;
+import taz.amin.util.http.EntityTags;
+
+/**
+ * A product aggregate with its entity tag, derived from the tags of the product, recommendations
+ * and reviews it was assembled from.
+ *
+ * The part tags are kept with the aggregate, so that a view of some of its parts gets the same
+ * tag as if it had been assembled from those parts alone.
+ *
+ * The service addresses are left out, so that the same data gets the same tag whichever instances
+ * of the composite and the core services it was served by.
+ */
+public class TaggedProductAggregate {
+    private final ProductAggregate aggregate;
+    private final String productTag;
+    private final String recommendationsTag;
+    private final String reviewsTag;
+    private final String etag;
+
+    /**
+     * @param recommendationsTag the tag of the recommendations, null if they are not in the aggregate
+     * @param reviewsTag the tag of the reviews, null if they are not in the aggregate
+     */
+    public TaggedProductAggregate(ProductAggregate aggregate, String productTag, String recommendationsTag, String reviewsTag) {
+        this.aggregate = aggregate;
+        this.productTag = productTag;
+        this.recommendationsTag = recommendationsTag;
+        this.reviewsTag = reviewsTag;
+
+        this.etag = EntityTags.builder()
+                .add(productTag)
+                .add(recommendationsTag)
+                .add(reviewsTag)
+                .add(String.join(",", aggregate.getMissing()))
+                .add(String.join(",", aggregate.getStale()))
+                .add(String.join(",", aggregate.getTruncated()))
+                .build();
+    }
+
+    public ProductAggregate getAggregate() {
+        return aggregate;
+    }
+
+    public String getProductTag() {
+        return productTag;
+    }
+
+    public String getRecommendationsTag() {
+        return recommendationsTag;
+    }
+
+    public String getReviewsTag() {
+        return reviewsTag;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+}
@@ -0,0 +1,58 @@
+package taz.amin.microservices.core.composite.product;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.test.StepVerifier;
+import taz.amin.api.exceptions.ServiceUnavailableException;
+import taz.amin.microservices.core.composite.product.services.DownstreamProperties;
+import taz.amin.microservices.core.composite.product.services.DownstreamWebClientFactory;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CircuitBreakerTests {
+
+	private final CircuitBreakerRegistry registry = CircuitBreakerRegistry.ofDefaults();
+	private final DownstreamWebClientFactory factory = new DownstreamWebClientFactory(WebClient.builder(), registry, new SimpleMeterRegistry());
+	private final DownstreamProperties.Downstream downstream = new DownstreamProperties.Downstream();
+
+	// Nothing listens on port 1, so every call fails to connect
+	private final WebClient client;
+
+	CircuitBreakerTests() {
+		downstream.setHost("localhost");
+		downstream.setPort(1);
+		client = factory.create("test-service", downstream);
+	}
+
+	@AfterEach
+	void tearDown() {
+		factory.destroy();
+	}
+
+	@Test
+	void failedCallsAreRecorded() {
+		StepVerifier.create(client.get().uri(downstream.getBaseUrl()).retrieve().bodyToMono(String.class))
+				.expectError()
+				.verify(Duration.ofSeconds(5));
+
+		assertEquals(1, registry.circuitBreaker("test-service").getMetrics().getNumberOfFailedCalls());
+	}
+
+	@Test
+	void openCircuitFailsFast() {
+		CircuitBreaker circuitBreaker = registry.circuitBreaker("test-service");
+		circuitBreaker.transitionToOpenState();
+
+		StepVerifier.create(client.get().uri(downstream.getBaseUrl()).retrieve().bodyToMono(String.class))
+				.expectError(ServiceUnavailableException.class)
+				.verify(Duration.ofMillis(500));
+
+		assertEquals(1, circuitBreaker.getMetrics().getNumberOfNotPermittedCalls());
+	}
+}
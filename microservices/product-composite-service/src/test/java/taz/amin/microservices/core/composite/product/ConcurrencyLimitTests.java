@@ -0,0 +1,95 @@
+package taz.amin.microservices.core.composite.product;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import taz.amin.microservices.core.composite.product.services.AdaptiveConcurrencyLimit;
+import taz.amin.microservices.core.composite.product.services.ConcurrencyLimitWebFilter;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+class ConcurrencyLimitTests {
+
+	private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+	private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@Test
+	void limitShrinksWhenLatencyGoesUp() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(100, 10, 500, 4, 1.5, 0.2, 0.8);
+		for (int i = 0; i < 50; i++) {
+			limit.onSample(FAST, 100);
+		}
+		int before = limit.getLimit();
+
+		for (int i = 0; i < 50; i++) {
+			limit.onSample(SLOW, limit.getLimit());
+		}
+
+		assertTrue(limit.getLimit() < before / 2);
+		assertTrue(limit.getLimit() >= 10);
+	}
+
+	@Test
+	void limitGrowsWhileLatencyIsSteadyAndInUse() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 10, 500, 4, 1.5, 0.2, 0.8);
+
+		for (int i = 0; i < 50; i++) {
+			limit.onSample(FAST, limit.getLimit());
+		}
+
+		assertTrue(limit.getLimit() > 40);
+	}
+
+	@Test
+	void limitDoesNotGrowWhileMostlyUnused() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 10, 500, 4, 1.5, 0.2, 0.8);
+
+		for (int i = 0; i < 50; i++) {
+			limit.onSample(FAST, 1);
+		}
+
+		assertEquals(20, limit.getLimit());
+	}
+
+	@Test
+	void writesAreShedBeforeReads() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 10, 10, 4, 1.5, 0.2, 0.5);
+
+		for (int i = 0; i < 5; i++) {
+			assertTrue(limit.tryAcquire(true));
+		}
+
+		assertFalse(limit.tryAcquire(true));
+		assertTrue(limit.tryAcquire(false));
+	}
+
+	@Test
+	void requestsAboveTheLimitAreRejected() {
+		ConcurrencyLimitWebFilter filter = new ConcurrencyLimitWebFilter(registry, true, 1, 1, 1, 4, 1.5, 0.2, 0.8, Duration.ofSeconds(2));
+
+		// The first request is never completed, so it keeps the only slot
+		filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/product-composite/1")), exchange -> Mono.never()).subscribe();
+
+		MockServerWebExchange rejected = MockServerWebExchange.from(MockServerHttpRequest.get("/product-composite/2"));
+		filter.filter(rejected, exchange -> Mono.empty()).block();
+		assertEquals(SERVICE_UNAVAILABLE, rejected.getResponse().getStatusCode());
+		assertEquals("2", rejected.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+		assertEquals(1.0, registry.get("composite.concurrency.rejected").tag("priority", "read").counter().count());
+
+		MockServerWebExchange other = MockServerWebExchange.from(MockServerHttpRequest.get("/actuator/health"));
+		filter.filter(other, exchange -> Mono.empty()).block();
+		assertNull(other.getResponse().getStatusCode());
+	}
+}
@@ -0,0 +1,69 @@
+package taz.amin.microservices.core.composite.product;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"app.product-composite.cache.enabled=false",
+		"app.product-composite.micro-batch.enabled=false"})
+class DownstreamErrorStatusTests {
+	private static final int PRODUCT_ID_TIMED_OUT = 1;
+	private static final int PRODUCT_ID_UNAVAILABLE = 2;
+
+	// Stands in for all three core services
+	private static final DisposableServer server = HttpServer.create()
+			.port(0)
+			.route(routes -> routes
+					.get("/product/" + PRODUCT_ID_TIMED_OUT, (request, response) -> response.status(504).send())
+					.get("/product/" + PRODUCT_ID_UNAVAILABLE, (request, response) -> response.status(503).send())
+					.get("/recommendation", (request, response) -> response.header("Content-Type", "application/json").sendString(Mono.just("[]")))
+					.get("/review", (request, response) -> response.header("Content-Type", "application/json").sendString(Mono.just("[]"))))
+			.bindNow();
+
+	@Autowired
+	private WebTestClient client;
+
+	@DynamicPropertySource
+	static void downstreamProperties(DynamicPropertyRegistry registry) {
+		for (String downstream : new String[] {"product-service", "recommendation-service", "review-service"}) {
+			registry.add("app." + downstream + ".port", server::port);
+			registry.add("app." + downstream + ".wire-format", () -> "json");
+		}
+	}
+
+	@AfterAll
+	static void tearDown() {
+		server.disposeNow();
+	}
+
+	@Test
+	void productLookupPastItsDeadlineIsAGatewayTimeout() {
+		getAndVerifyProduct(PRODUCT_ID_TIMED_OUT, HttpStatus.GATEWAY_TIMEOUT);
+	}
+
+	@Test
+	void unavailableProductServiceIsServiceUnavailable() {
+		getAndVerifyProduct(PRODUCT_ID_UNAVAILABLE, HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
+	private void getAndVerifyProduct(int productId, HttpStatus expectedStatus) {
+		client.get()
+				.uri("/product-composite/" + productId)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(expectedStatus)
+				.expectBody()
+				.jsonPath("$.path").isEqualTo("/product-composite/" + productId);
+	}
+}
@@ -0,0 +1,113 @@
+package taz.amin.microservices.core.composite.product;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.test.StepVerifier;
+import taz.amin.api.core.Deadline;
+import taz.amin.microservices.core.composite.product.services.DownstreamMetrics;
+import taz.amin.microservices.core.composite.product.services.DownstreamProperties;
+import taz.amin.microservices.core.composite.product.services.DownstreamWebClientFactory;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DownstreamMetricsTests {
+
+	private static final String BODY = "{\"productId\":1,\"name\":\"" + "x".repeat(1000) + "\"}";
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final DownstreamWebClientFactory factory = new DownstreamWebClientFactory(WebClient.builder(), CircuitBreakerRegistry.ofDefaults(), meterRegistry);
+	private final DownstreamProperties.Downstream downstream = new DownstreamProperties.Downstream();
+
+	private final DisposableServer server = HttpServer.create()
+			.port(0)
+			.route(routes -> routes
+					.get("/ok", (request, response) -> response.header("Content-Type", "application/json").sendString(Mono.just(BODY)))
+					.post("/ok", (request, response) -> response.header("Content-Type", "application/json").send(request.receive().retain()))
+					.get("/not-found", (request, response) -> response.status(404).send())
+					.get("/error", (request, response) -> response.status(500).send())
+					.get("/slow", (request, response) -> Mono.delay(Duration.ofSeconds(2)).then(response.sendString(Mono.just(BODY)).then())))
+			.bindNow();
+
+	private final WebClient client;
+	private final DownstreamMetrics metrics;
+
+	DownstreamMetricsTests() {
+		downstream.setHost("localhost");
+		downstream.setPort(server.port());
+		client = factory.create("test-service", downstream);
+		metrics = factory.getMetrics("test-service");
+	}
+
+	@AfterEach
+	void tearDown() {
+		server.disposeNow();
+		factory.destroy();
+	}
+
+	@Test
+	void callsAreTimedByOutcome() {
+		StepVerifier.create(metrics.timed("getOk", get("/ok"))).expectNextCount(1).verifyComplete();
+		StepVerifier.create(metrics.timed("getNotFound", get("/not-found"))).expectError().verify(Duration.ofSeconds(5));
+		StepVerifier.create(metrics.timed("getError", get("/error"))).expectError().verify(Duration.ofSeconds(5));
+
+		assertEquals(1, timer("getOk", "success").count());
+		assertEquals(1, timer("getNotFound", "4xx").count());
+		assertEquals(1, timer("getError", "5xx").count());
+	}
+
+	@Test
+	void callsCancelledByAnExpiredDeadlineAreTimedOut() {
+		Deadline deadline = Deadline.after(Duration.ofMillis(200));
+		Mono<String> call = deadline.limit(metrics.timed("getSlow", get("/slow")), "slow")
+				.contextWrite(context -> context.put(Deadline.class, deadline));
+
+		StepVerifier.create(call).expectError().verify(Duration.ofSeconds(5));
+
+		assertEquals(1, timer("getSlow", "timeout").count());
+		assertNull(meterRegistry.find("composite.downstream.calls").tag("operation", "getSlow").tag("outcome", "success").timer());
+	}
+
+	@Test
+	void payloadSizesAreRecordedPerOperation() {
+		Mono<String> post = client.post().uri(downstream.getBaseUrl() + "/ok").bodyValue(BODY).retrieve().bodyToMono(String.class);
+
+		StepVerifier.create(metrics.timed("getOk", get("/ok"))).expectNextCount(1).verifyComplete();
+		StepVerifier.create(metrics.timed("createOk", post)).expectNextCount(1).verifyComplete();
+
+		assertEquals(BODY.length(), payload("getOk", "response").totalAmount());
+		assertEquals(BODY.length(), payload("createOk", "request").totalAmount());
+		assertEquals(BODY.length(), payload("createOk", "response").totalAmount());
+		assertNull(meterRegistry.find("composite.downstream.payload").tag("operation", "getOk").tag("direction", "request").summary());
+	}
+
+	private Mono<String> get(String path) {
+		return client.get().uri(downstream.getBaseUrl() + path).retrieve().bodyToMono(String.class);
+	}
+
+	private Timer timer(String operation, String outcome) {
+		return meterRegistry.get("composite.downstream.calls")
+				.tag("downstream", "test-service")
+				.tag("operation", operation)
+				.tag("outcome", outcome)
+				.timer();
+	}
+
+	private DistributionSummary payload(String operation, String direction) {
+		return meterRegistry.get("composite.downstream.payload")
+				.tag("downstream", "test-service")
+				.tag("operation", operation)
+				.tag("direction", direction)
+				.summary();
+	}
+}
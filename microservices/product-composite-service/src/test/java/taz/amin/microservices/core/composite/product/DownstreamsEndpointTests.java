@@ -0,0 +1,46 @@
+package taz.amin.microservices.core.composite.product;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class DownstreamsEndpointTests {
+
+	@Autowired
+	private WebTestClient client;
+
+	@Test
+	void instancesAreShown() {
+		client.get()
+				.uri("/actuator/downstreams")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$['product-service'][0].address").isEqualTo("localhost:7001")
+				.jsonPath("$['recommendation-service'][0].address").isEqualTo("localhost:7002")
+				.jsonPath("$['review-service'][0].address").isEqualTo("localhost:7003");
+	}
+
+	@Test
+	void instancesCannotBeReplacedOverHttp() {
+		client.post()
+				.uri("/actuator/downstreams/product-service")
+				.contentType(APPLICATION_JSON)
+				.bodyValue("{\"instances\": \"elsewhere:80\"}")
+				.exchange()
+				.expectStatus().isEqualTo(HttpStatus.METHOD_NOT_ALLOWED);
+
+		client.get()
+				.uri("/actuator/downstreams/product-service")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(1)
+				.jsonPath("$[0].address").isEqualTo("localhost:7001");
+	}
+}
@@ -0,0 +1,74 @@
+package taz.amin.microservices.core.composite.product;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.test.StepVerifier;
+import taz.amin.api.exceptions.InvalidInputException;
+import taz.amin.api.exceptions.NotFoundException;
+import taz.amin.microservices.core.composite.product.services.DownstreamProperties;
+import taz.amin.microservices.core.composite.product.services.DownstreamWebClientFactory;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ErrorMappingTests {
+
+	private final CircuitBreakerRegistry registry = CircuitBreakerRegistry.ofDefaults();
+	private final DownstreamWebClientFactory factory = new DownstreamWebClientFactory(WebClient.builder(), registry, new SimpleMeterRegistry());
+	private final DownstreamProperties.Downstream downstream = new DownstreamProperties.Downstream();
+
+	private final DisposableServer server = HttpServer.create()
+			.port(0)
+			.route(routes -> routes
+					.get("/not-found", (request, response) -> response.status(404)
+							.header("Content-Type", "application/json")
+							.sendString(Mono.just("{\"timestamp\":\"2024-01-01T00:00:00Z\",\"path\":\"/product/1\",\"status\":404,\"error\":\"Not Found\",\"message\":\"No product found for productId: 1\"}")))
+					.get("/invalid", (request, response) -> response.status(422)
+							.header("Content-Type", "text/plain")
+							.sendString(Mono.just("Invalid"))))
+			.bindNow();
+
+	private final WebClient client;
+
+	ErrorMappingTests() {
+		downstream.setHost("localhost");
+		downstream.setPort(server.port());
+		client = factory.create("test-service", downstream);
+	}
+
+	@AfterEach
+	void tearDown() {
+		server.disposeNow();
+		factory.destroy();
+	}
+
+	@Test
+	void notFoundIsMappedWithTheMessageOfTheErrorBody() {
+		StepVerifier.create(client.get().uri(downstream.getBaseUrl() + "/not-found").retrieve().bodyToMono(String.class))
+				.expectErrorSatisfies(ex -> {
+					assertEquals(NotFoundException.class, ex.getClass());
+					assertEquals("No product found for productId: 1", ex.getMessage());
+					assertEquals(0, ex.getStackTrace().length);
+				})
+				.verify(Duration.ofSeconds(5));
+
+		assertEquals(0, registry.circuitBreaker("test-service").getMetrics().getNumberOfFailedCalls());
+	}
+
+	@Test
+	void errorBodyThatCannotBeDecodedIsMappedWithTheStatus() {
+		StepVerifier.create(client.get().uri(downstream.getBaseUrl() + "/invalid").retrieve().bodyToMono(String.class))
+				.expectErrorSatisfies(ex -> {
+					assertEquals(InvalidInputException.class, ex.getClass());
+					assertEquals("422 Unprocessable Entity from GET " + downstream.getBaseUrl() + "/invalid", ex.getMessage());
+				})
+				.verify(Duration.ofSeconds(5));
+	}
+}
@@ -0,0 +1,152 @@
+package taz.amin.microservices.core.composite.product;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.test.StepVerifier;
+import taz.amin.api.composite.product.ProductAggregateSection;
+import taz.amin.microservices.core.composite.product.services.ProductAggregateCache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"app.product-composite.micro-batch.enabled=false",
+		"app.product-composite.first-page-size=5",
+		"app.page.max-limit=3"})
+class FirstPageTests {
+	private static final int PRODUCT_ID = 1;
+
+	private static final String PRODUCT = "{\"productId\":1,\"name\":\"name\",\"weight\":1,\"serviceAddress\":\"pro\"}";
+
+	// Stands in for all three core services. The first page size is cut down to 2, below the max-limit of 3,
+	// so one item more than that is asked for. There are more recommendations, but no more reviews. The
+	// batch lookups of several products have no limit
+	private static final DisposableServer server = HttpServer.create()
+			.port(0)
+			.route(routes -> routes
+					.get("/product/" + PRODUCT_ID, (request, response) -> json(response, PRODUCT))
+					.get("/product", (request, response) -> json(response, "[" + PRODUCT + "]"))
+					.get("/recommendation", (request, response) -> request.uri().contains("productIds=")
+							? json(response, "[" + String.join(",", recommendation(1), recommendation(2), recommendation(3)) + "]")
+							: !request.uri().contains("limit=3") ? response.status(400).send()
+							: json(response, page(recommendation(1), recommendation(2), recommendation(3))))
+					.get("/review", (request, response) -> request.uri().contains("productIds=")
+							? json(response, "[" + String.join(",", review(1), review(2)) + "]")
+							: !request.uri().contains("limit=3") ? response.status(400).send()
+							: json(response, page(review(1), review(2)))))
+			.bindNow();
+
+	@Autowired
+	private ProductAggregateCache cache;
+
+	@Autowired
+	private WebTestClient client;
+
+	@DynamicPropertySource
+	static void downstreamProperties(DynamicPropertyRegistry registry) {
+		for (String downstream : new String[] {"product-service", "recommendation-service", "review-service"}) {
+			registry.add("app." + downstream + ".port", server::port);
+			registry.add("app." + downstream + ".wire-format", () -> "json");
+		}
+	}
+
+	@BeforeEach
+	void setupCache() {
+		cache.invalidateAll();
+	}
+
+	@AfterAll
+	static void tearDown() {
+		server.disposeNow();
+	}
+
+	@Test
+	void onlyTheFirstPageIsIncludedAndMarkedAsTruncated() {
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.recommendations.length()").isEqualTo(2)
+				.jsonPath("$.reviews.length()").isEqualTo(2)
+				.jsonPath("$.truncated.length()").isEqualTo(1)
+				.jsonPath("$.truncated[0]").isEqualTo("recommendations");
+	}
+
+	@Test
+	void sectionsAreMarkedAsTruncated() {
+		Flux<ProductAggregateSection> sections = client.get()
+				.uri("/product-composite/" + PRODUCT_ID)
+				.accept(APPLICATION_NDJSON)
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(ProductAggregateSection.class)
+				.getResponseBody()
+				.filter(section -> !ProductAggregateSection.PRODUCT.equals(section.getSection()))
+				.sort((a, b) -> a.getSection().compareTo(b.getSection()));
+
+		StepVerifier.create(sections)
+				.assertNext(section -> {
+					assertEquals(ProductAggregateSection.RECOMMENDATIONS, section.getSection());
+					assertEquals(2, section.getRecommendations().size());
+					assertEquals(true, section.getTruncated());
+				})
+				.assertNext(section -> {
+					assertEquals(ProductAggregateSection.REVIEWS, section.getSection());
+					assertEquals(2, section.getReviews().size());
+					assertEquals(false, section.getTruncated());
+				})
+				.verifyComplete();
+	}
+
+	@Test
+	void aggregateCachedByABatchLookupIsTruncatedToo() {
+		client.get()
+				.uri("/product-composite?productIds=" + PRODUCT_ID)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$[0].aggregate.recommendations.length()").isEqualTo(2)
+				.jsonPath("$[0].aggregate.truncated[0]").isEqualTo("recommendations");
+
+		// Served from the cache entry the batch lookup left
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.recommendations.length()").isEqualTo(2)
+				.jsonPath("$.truncated[0]").isEqualTo("recommendations");
+	}
+
+	private static Mono<Void> json(HttpServerResponse response, String body) {
+		return response.header("Content-Type", "application/json").sendString(Mono.just(body)).then();
+	}
+
+	private static String page(String... items) {
+		return "{\"items\":[" + String.join(",", items) + "],\"next\":null}";
+	}
+
+	private static String recommendation(int recommendationId) {
+		return "{\"productId\":1,\"recommendationId\":" + recommendationId + ",\"author\":\"a\",\"rate\":1,\"content\":\"c\",\"serviceAddress\":\"rec\"}";
+	}
+
+	private static String review(int reviewId) {
+		return "{\"productId\":1,\"reviewId\":" + reviewId + ",\"author\":\"a\",\"subject\":\"s\",\"content\":\"c\",\"serviceAddress\":\"rev\"}";
+	}
+}
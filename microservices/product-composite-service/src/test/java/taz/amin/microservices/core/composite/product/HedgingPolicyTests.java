@@ -0,0 +1,111 @@
+package taz.amin.microservices.core.composite.product;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import taz.amin.microservices.core.composite.product.services.HedgingPolicy;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HedgingPolicyTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final AtomicInteger attempts = new AtomicInteger();
+
+	// The first attempt is slow, any later attempt responds at once
+	private final Mono<String> request = Mono.defer(() -> attempts.incrementAndGet() == 1
+			? Mono.delay(Duration.ofSeconds(2)).thenReturn("primary")
+			: Mono.just("hedge"));
+
+	@Test
+	void slowRequestIsHedged() {
+		HedgingPolicy policy = policy(true, 1.0);
+
+		StepVerifier.create(policy.hedge(request)).expectNext("hedge").verifyComplete();
+
+		assertEquals(2, attempts.get());
+		assertEquals(1, hedges("sent"));
+		assertEquals(1, hedges("won"));
+	}
+
+	@Test
+	void hedgeFailingFastDoesNotCancelASlowerPrimary() {
+		HedgingPolicy policy = policy(true, 1.0);
+		Mono<String> failingHedge = Mono.defer(() -> attempts.incrementAndGet() == 1
+				? Mono.delay(Duration.ofMillis(200)).thenReturn("primary")
+				: Mono.error(new IllegalStateException("hedge failed")));
+
+		StepVerifier.create(policy.hedge(failingHedge)).expectNext("primary").verifyComplete();
+
+		assertEquals(2, attempts.get());
+		assertEquals(1, hedges("sent"));
+	}
+
+	@Test
+	void errorOfThePrimaryIsReturnedIfBothFail() {
+		HedgingPolicy policy = policy(true, 1.0);
+		Mono<String> failing = Mono.defer(() -> attempts.incrementAndGet() == 1
+				? Mono.delay(Duration.ofMillis(200)).then(Mono.error(new IllegalStateException("primary failed")))
+				: Mono.error(new IllegalStateException("hedge failed")));
+
+		StepVerifier.create(policy.hedge(failing))
+				.expectErrorMatches(ex -> ex instanceof IllegalStateException && ex.getMessage().equals("primary failed"))
+				.verify();
+
+		assertEquals(2, attempts.get());
+	}
+
+	@Test
+	void fastErrorIsNotHedged() {
+		HedgingPolicy policy = policy(true, 1.0);
+		Mono<String> failing = Mono.defer(() -> {
+			attempts.incrementAndGet();
+			return Mono.error(new IllegalStateException("not found"));
+		});
+
+		StepVerifier.create(policy.hedge(failing)).expectErrorMessage("not found").verify(Duration.ofMillis(40));
+
+		assertEquals(1, attempts.get());
+		assertEquals(0, hedges("sent"));
+	}
+
+	@Test
+	void fastRequestIsNotHedged() {
+		HedgingPolicy policy = policy(true, 1.0);
+
+		StepVerifier.create(policy.hedge(Mono.just("fast"))).expectNext("fast").verifyComplete();
+
+		assertEquals(0, hedges("sent"));
+	}
+
+	@Test
+	void noHedgeWithoutBudget() {
+		HedgingPolicy policy = policy(true, 0.0);
+
+		StepVerifier.create(policy.hedge(request)).expectNext("primary").verifyComplete();
+
+		assertEquals(1, attempts.get());
+		assertEquals(1, hedges("rejected"));
+	}
+
+	@Test
+	void disabledPolicyDoesNotHedge() {
+		HedgingPolicy policy = policy(false, 1.0);
+
+		StepVerifier.create(policy.hedge(request)).expectNext("primary").verifyComplete();
+
+		assertEquals(1, attempts.get());
+	}
+
+	private HedgingPolicy policy(boolean enabled, double budgetRatio) {
+		return new HedgingPolicy("test", registry, enabled, 0.95, Duration.ofMillis(50), Duration.ofMillis(10), budgetRatio);
+	}
+
+	private double hedges(String result) {
+		return registry.get("composite.hedging.requests").tag("result", result).counter().count();
+	}
+}
@@ -0,0 +1,126 @@
+package taz.amin.microservices.core.composite.product;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import taz.amin.microservices.core.composite.product.services.DownstreamProperties;
+import taz.amin.microservices.core.composite.product.services.InstanceBalancer;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InstanceBalancerTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final DownstreamProperties.OutlierEjection outlierEjection = new DownstreamProperties.OutlierEjection();
+	private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+	private final Set<String> paths = ConcurrentHashMap.newKeySet();
+	private Set<String> failing = Set.of();
+
+	private final ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create("http://a:7001/product/1")).build();
+
+	@Test
+	void callsAreSpreadOverTheInstances() {
+		InstanceBalancer balancer = balancer(List.of("a:7001", "b:7001", "c:7001"), Set.of());
+
+		call(balancer, 300);
+
+		assertEquals(Set.of("a:7001", "b:7001", "c:7001"), calls.keySet());
+		assertEquals(Set.of("/product/1"), paths);
+	}
+
+	@Test
+	void callsGoToTheInstanceWithFewerOutstandingRequests() {
+		InstanceBalancer balancer = balancer(List.of("a:7001", "b:7001"), Set.of());
+
+		// The first call never gets a response, so its instance keeps one outstanding request
+		Disposable pending = balancer.filter(request, req -> {
+			calls.computeIfAbsent(address(req), address -> new AtomicInteger()).incrementAndGet();
+			return Mono.never();
+		}).subscribe();
+		String busy = calls.keySet().iterator().next();
+
+		call(balancer, 20);
+
+		assertEquals(1, calls.get(busy).get());
+		pending.dispose();
+		assertTrue(balancer.getInstances().stream().allMatch(instance -> instance.getOutstanding() == 0));
+	}
+
+	@Test
+	void failingInstanceIsEjected() {
+		InstanceBalancer balancer = balancer(List.of("a:7001", "b:7001"), Set.of("a:7001"));
+
+		call(balancer, 50);
+		calls.clear();
+		call(balancer, 20);
+
+		assertEquals(Set.of("b:7001"), calls.keySet());
+		assertTrue(instance(balancer, "a:7001").isEjected());
+		assertEquals(1.0, registry.get("composite.balancer.ejections").tag("instance", "a:7001").counter().count());
+	}
+
+	@Test
+	void noMoreThanMaxEjectionPercentAreEjected() {
+		InstanceBalancer balancer = balancer(List.of("a:7001", "b:7001"), Set.of("a:7001", "b:7001"));
+
+		call(balancer, 50);
+
+		assertEquals(1, balancer.getInstances().stream().filter(InstanceBalancer.Instance::isEjected).count());
+	}
+
+	@Test
+	void replacedInstancesKeepTheirState() {
+		InstanceBalancer balancer = balancer(List.of("a:7001", "b:7001"), Set.of("a:7001"));
+		call(balancer, 50);
+
+		balancer.setInstances(List.of("a:7001", "c:7001"));
+
+		assertTrue(instance(balancer, "a:7001").isEjected());
+		assertFalse(instance(balancer, "c:7001").isEjected());
+		assertTrue(registry.find("composite.balancer.latency").tag("instance", "b:7001").timers().isEmpty());
+	}
+
+	private InstanceBalancer balancer(List<String> addresses, Set<String> failing) {
+		this.failing = failing;
+		return new InstanceBalancer("test-service", registry, outlierEjection, addresses);
+	}
+
+	private void call(InstanceBalancer balancer, int times) {
+		ExchangeFunction exchange = req -> {
+			String address = address(req);
+			calls.computeIfAbsent(address, key -> new AtomicInteger()).incrementAndGet();
+			paths.add(req.url().getPath());
+			HttpStatus status = failing.contains(address) ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.OK;
+			return Mono.just(ClientResponse.create(status).build());
+		};
+		for (int i = 0; i < times; i++) {
+			balancer.filter(request, exchange).block();
+		}
+	}
+
+	private static String address(ClientRequest request) {
+		return request.url().getHost() + ":" + request.url().getPort();
+	}
+
+	private static InstanceBalancer.Instance instance(InstanceBalancer balancer, String address) {
+		return balancer.getInstances().stream()
+				.filter(instance -> instance.getAddress().equals(address))
+				.findFirst()
+				.orElseThrow();
+	}
+}
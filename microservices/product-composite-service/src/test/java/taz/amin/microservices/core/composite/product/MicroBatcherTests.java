@@ -0,0 +1,67 @@
+package taz.amin.microservices.core.composite.product;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import taz.amin.microservices.core.composite.product.services.MicroBatcher;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MicroBatcherTests {
+
+	private final List<Set<Integer>> batches = new CopyOnWriteArrayList<>();
+
+	// Doubles every key, except 13 that is missing in the result
+	private final Function<Set<Integer>, Mono<Map<Integer, Integer>>> lookup = keys -> {
+		batches.add(new HashSet<>(keys));
+		return Mono.just(keys.stream().filter(k -> k != 13).collect(Collectors.toMap(k -> k, k -> 2 * k)));
+	};
+
+	@Test
+	void concurrentLoadsAreBatched() {
+		MicroBatcher<Integer, Integer> batcher = new MicroBatcher<>("test", Duration.ofMillis(20), 10, lookup);
+
+		StepVerifier.create(Flux.merge(batcher.load(1), batcher.load(2), batcher.load(3), batcher.load(2)).collectList())
+				.assertNext(values -> assertEquals(List.of(2, 4, 4, 6), values.stream().sorted().collect(Collectors.toList())))
+				.verifyComplete();
+
+		assertEquals(1, batches.size());
+		assertEquals(Set.of(1, 2, 3), batches.get(0));
+	}
+
+	@Test
+	void fullBatchIsSentWithoutWaitingForTheWindow() {
+		MicroBatcher<Integer, Integer> batcher = new MicroBatcher<>("test", Duration.ofSeconds(30), 2, lookup);
+
+		StepVerifier.create(Flux.merge(batcher.load(1), batcher.load(2)).collectList())
+				.assertNext(values -> assertEquals(2, values.size()))
+				.expectComplete()
+				.verify(Duration.ofSeconds(5));
+
+		assertEquals(1, batches.size());
+	}
+
+	@Test
+	void missingKeyCompletesEmpty() {
+		MicroBatcher<Integer, Integer> batcher = new MicroBatcher<>("test", Duration.ofMillis(1), 10, lookup);
+
+		StepVerifier.create(batcher.load(13)).verifyComplete();
+	}
+
+	@Test
+	void failedBatchFailsAllCallers() {
+		MicroBatcher<Integer, Integer> batcher = new MicroBatcher<>("test", Duration.ofMillis(20), 10,
+				keys -> Mono.error(new IllegalStateException("boom")));
+
+		StepVerifier.create(Flux.merge(batcher.load(1).onErrorReturn(-1), batcher.load(2).onErrorReturn(-1)).collectList())
+				.assertNext(values -> assertEquals(List.of(-1, -1), values))
+				.verifyComplete();
+	}
+}
@@ -0,0 +1,46 @@
+package taz.amin.microservices.core.composite.product;
+
+import org.junit.jupiter.api.Test;
+import taz.amin.api.core.product.Product;
+import taz.amin.api.core.recommendation.Recommendation;
+import taz.amin.api.core.review.Review;
+import taz.amin.microservices.core.composite.product.services.ProductAggregateAssembler;
+import taz.amin.microservices.core.composite.product.services.TaggedProductAggregate;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static taz.amin.api.composite.product.ProductAggregateSection.PRODUCT;
+import static taz.amin.api.composite.product.ProductAggregateSection.RECOMMENDATIONS;
+import static taz.amin.api.composite.product.ProductAggregateSection.REVIEWS;
+
+class ProductAggregateAssemblerTests {
+
+	private static final Set<String> ALL_PARTS = Set.of(PRODUCT, RECOMMENDATIONS, REVIEWS);
+
+	@Test
+	void tagDoesNotDependOnTheInstancesThatServedIt() {
+		TaggedProductAggregate first = assemble("composite-1", "product-1", "recommendation-1", "review-1", "content");
+		TaggedProductAggregate second = assemble("composite-2", "product-2", "recommendation-2", "review-2", "content");
+
+		assertEquals(first.getEtag(), second.getEtag());
+	}
+
+	@Test
+	void tagChangesWithTheData() {
+		TaggedProductAggregate first = assemble("composite", "product", "recommendation", "review", "content");
+		TaggedProductAggregate second = assemble("composite", "product", "recommendation", "review", "changed content");
+
+		assertNotEquals(first.getEtag(), second.getEtag());
+	}
+
+	private static TaggedProductAggregate assemble(String compositeAddress, String productAddress, String recommendationAddress, String reviewAddress, String content) {
+		return ProductAggregateAssembler.assemble(
+				new Product(1, "name", 1, productAddress),
+				List.of(new Recommendation(1, 1, "author", 1, content, recommendationAddress)),
+				List.of(new Review(1, 1, "author", "subject", content, reviewAddress)),
+				compositeAddress, List.of(), ALL_PARTS, 0);
+	}
+}
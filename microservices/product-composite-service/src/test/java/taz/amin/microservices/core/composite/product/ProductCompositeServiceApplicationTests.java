@@ -5,24 +5,49 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.util.context.Context;
 import taz.amin.api.composite.product.ProductAggregate;
+import taz.amin.api.composite.product.ProductAggregateSection;
+import taz.amin.api.composite.product.ProductCompositeService;
 import taz.amin.api.composite.product.RecommendationSummary;
 import taz.amin.api.composite.product.ReviewSummary;
+import taz.amin.api.core.Deadline;
 import taz.amin.api.core.product.Product;
 import taz.amin.api.core.recommendation.Recommendation;
 import taz.amin.api.core.review.Review;
 import taz.amin.api.exceptions.InvalidInputException;
 import taz.amin.api.exceptions.NotFoundException;
+import taz.amin.microservices.core.composite.product.services.LastKnownParts;
+import taz.amin.microservices.core.composite.product.services.ProductAggregateCache;
 import taz.amin.microservices.core.composite.product.services.ProductCompositeIntegration;
 
+import java.time.Duration;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.http.HttpStatus.OK;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
@@ -37,29 +62,59 @@ class ProductCompositeServiceApplicationTests {
 	private ProductCompositeIntegration compositeIntegration;
 	@Autowired
 	private WebTestClient client;
+	@Autowired
+	private ProductAggregateCache cache;
+	@Autowired
+	private LastKnownParts lastKnownParts;
+	@Autowired
+	private ProductCompositeService compositeService;
 
 	@BeforeEach
 	void setup() {
+		cache.invalidateAll();
+		lastKnownParts.invalidateAll();
+
 		when(compositeIntegration.getProduct(PRODUCT_ID_OK))
-				.thenReturn(new Product(PRODUCT_ID_OK, "name", 1, "mock-address"));
+				.thenReturn(Mono.just(new Product(PRODUCT_ID_OK, "name", 1, "mock-address")));
 		when(compositeIntegration.getRecommendations(PRODUCT_ID_OK))
-				.thenReturn(singletonList(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock address")));
+				.thenReturn(Flux.fromIterable(singletonList(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock address"))));
 		when(compositeIntegration.getReviews(PRODUCT_ID_OK))
-				.thenReturn(singletonList(new Review(PRODUCT_ID_OK,1, "author", "subject", "content", "mock address")));
+				.thenReturn(Flux.fromIterable(singletonList(new Review(PRODUCT_ID_OK,1, "author", "subject", "content", "mock address"))));
+
+		// Mocking batch lookups, only PRODUCT_ID_OK exists
+		when(compositeIntegration.getProducts(anyCollection()))
+				.thenReturn(Flux.just(new Product(PRODUCT_ID_OK, "name", 1, "mock-address")));
+		when(compositeIntegration.getRecommendations(anyCollection()))
+				.thenReturn(Flux.just(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock address")));
+		when(compositeIntegration.getReviews(anyCollection()))
+				.thenReturn(Flux.just(new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", "mock address")));
 
 		when(compositeIntegration.createProduct(any(Product.class)))
-				.thenReturn(new Product(PRODUCT_ID_OK, "name", 1, "mock-address"));
+				.thenReturn(Mono.just(new Product(PRODUCT_ID_OK, "name", 1, "mock-address")));
 
 		// Mocking creation of recommendations and reviews
 		when(compositeIntegration.createRecommendation(any(Recommendation.class)))
-				.thenReturn(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock-address"));
+				.thenReturn(Mono.just(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock-address")));
 		when(compositeIntegration.createReview(any(Review.class)))
-				.thenReturn(new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", "mock-address"));
+				.thenReturn(Mono.just(new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", "mock-address")));
+
+		when(compositeIntegration.createRecommendations(anyList())).thenReturn(Mono.empty());
+		when(compositeIntegration.createReviews(anyList())).thenReturn(Mono.empty());
+
+		// Mocking deletion of the product and its recommendations and reviews
+		when(compositeIntegration.deleteProduct(anyInt())).thenReturn(Mono.empty());
+		when(compositeIntegration.deleteRecommendations(anyInt())).thenReturn(Mono.empty());
+		when(compositeIntegration.deleteReviews(anyInt())).thenReturn(Mono.empty());
 
 		when(compositeIntegration.getProduct(PRODUCT_ID_NOT_FOUND))
-				.thenThrow(new NotFoundException("NOT FOUND: " + PRODUCT_ID_NOT_FOUND));
+				.thenReturn(Mono.error(new NotFoundException("NOT FOUND: " + PRODUCT_ID_NOT_FOUND)));
+		when(compositeIntegration.getRecommendations(PRODUCT_ID_NOT_FOUND)).thenReturn(Flux.empty());
+		when(compositeIntegration.getReviews(PRODUCT_ID_NOT_FOUND)).thenReturn(Flux.empty());
+
 		when(compositeIntegration.getProduct(PRODUCT_ID_INVALID))
-				.thenThrow(new InvalidInputException("INVALID: " + PRODUCT_ID_INVALID));
+				.thenReturn(Mono.error(new InvalidInputException("INVALID: " + PRODUCT_ID_INVALID)));
+		when(compositeIntegration.getRecommendations(PRODUCT_ID_INVALID)).thenReturn(Flux.empty());
+		when(compositeIntegration.getReviews(PRODUCT_ID_INVALID)).thenReturn(Flux.empty());
 	}
 
 	@Test
@@ -79,6 +134,59 @@ class ProductCompositeServiceApplicationTests {
 		postAndVerifyProduct(compositeProduct, OK);
 	}
 
+	@Test
+	void createCompositeProductHasNoDefaultDeadline() {
+		AtomicReference<Deadline> deadline = new AtomicReference<>();
+		when(compositeIntegration.createProduct(any(Product.class))).thenReturn(Mono.deferContextual(context -> {
+			deadline.set(context.getOrDefault(Deadline.class, null));
+			return Mono.just(new Product(PRODUCT_ID_OK, "name", 1, "mock-address"));
+		}));
+
+		postAndVerifyProduct(new ProductAggregate(1, "name", 1, null, null, null), OK);
+		assertNull(deadline.get());
+
+		// Only the one the caller asks for
+		client.post()
+				.uri("/product-composite")
+				.header(Deadline.HEADER, "1000")
+				.body(Mono.just(new ProductAggregate(1, "name", 1, null, null, null)), ProductAggregate.class)
+				.exchange()
+				.expectStatus().isOk();
+		assertNotNull(deadline.get());
+	}
+
+	@Test
+	void createCompositeProductWritesChildrenInBatches() {
+		ProductAggregate compositeProduct = new ProductAggregate(1, "name", 1,
+				List.of(new RecommendationSummary(1, "a", 1, "c"), new RecommendationSummary(2, "a", 1, "c")),
+				List.of(new ReviewSummary(1, "a", "s", "c"), new ReviewSummary(2, "a", "s", "c")), null);
+
+		postAndVerifyProduct(compositeProduct, OK);
+
+		verify(compositeIntegration, times(1)).createRecommendations(argThat(recommendations -> recommendations.size() == 2));
+		verify(compositeIntegration, times(1)).createReviews(argThat(reviews -> reviews.size() == 2));
+		verify(compositeIntegration, never()).createRecommendation(any(Recommendation.class));
+		verify(compositeIntegration, never()).createReview(any(Review.class));
+	}
+
+	@Test
+	void createCompositeProductChildFailure() {
+		when(compositeIntegration.createReviews(anyList()))
+				.thenReturn(Mono.error(new InvalidInputException("Duplicate key, Product Id: 1, Review Id:1")));
+
+		ProductAggregate compositeProduct = new ProductAggregate(1, "name", 1,
+				singletonList(new RecommendationSummary(1, "a", 1, "c")),
+				singletonList(new ReviewSummary(1, "a", "s", "c")), null);
+
+		client.post()
+				.uri("/product-composite")
+				.body(Mono.just(compositeProduct), ProductAggregate.class)
+				.exchange()
+				.expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY)
+				.expectBody()
+				.jsonPath("$.message").isEqualTo("Duplicate key, Product Id: 1, Review Id:1");
+	}
+
 	@Test
 	void deleteCompositeProduct() {
 		ProductAggregate compositeProduct = new ProductAggregate(1, "name", 1,
@@ -104,6 +212,220 @@ class ProductCompositeServiceApplicationTests {
 				.jsonPath("$.recommendations.length()").isEqualTo(1)
 				.jsonPath("$.reviews.length()").isEqualTo(1);
 	}
+
+	@Test
+	void getProductByIdWithIncludedPartsOnly() {
+		client.get()
+				.uri("product-composite/" + PRODUCT_ID_OK + "?include=reviews")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK)
+				.jsonPath("$.recommendations").doesNotExist()
+				.jsonPath("$.reviews.length()").isEqualTo(1)
+				.jsonPath("$.missing.length()").isEqualTo(0);
+
+		// A part that is not included is not looked up at all
+		verify(compositeIntegration, never()).getRecommendations(PRODUCT_ID_OK);
+
+		client.get()
+				.uri("product-composite/" + PRODUCT_ID_OK + "?include=ratings")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY)
+				.expectBody()
+				.jsonPath("$.message").isEqualTo("Invalid include: ratings, must be one of: product, recommendations, reviews");
+	}
+
+	@Test
+	void getProductByIdIsNotModified() {
+		String etag = client.get()
+				.uri("product-composite/" + PRODUCT_ID_OK)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals(HttpHeaders.VARY, "Accept, Accept-Encoding")
+				.returnResult(ProductAggregate.class)
+				.getResponseHeaders().getETag();
+		assertTrue(etag.startsWith("W/\""), etag);
+
+		client.get()
+				.uri("product-composite/" + PRODUCT_ID_OK)
+				.accept(APPLICATION_JSON)
+				.header(HttpHeaders.IF_NONE_MATCH, etag)
+				.exchange()
+				.expectStatus().isNotModified()
+				.expectBody().isEmpty();
+
+		// A view of some of the parts is another representation, with another tag
+		client.get()
+				.uri("product-composite/" + PRODUCT_ID_OK + "?include=reviews")
+				.accept(APPLICATION_JSON)
+				.header(HttpHeaders.IF_NONE_MATCH, etag)
+				.exchange()
+				.expectStatus().isOk();
+	}
+
+	@Test
+	void getProductByIdIsCachedUntilDeleted() {
+		getAndVerifyProduct(PRODUCT_ID_OK, OK).jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK);
+		getAndVerifyProduct(PRODUCT_ID_OK, OK).jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK);
+		verify(compositeIntegration, times(1)).getProduct(PRODUCT_ID_OK);
+
+		deleteAndVerifyProduct(PRODUCT_ID_OK, OK);
+
+		getAndVerifyProduct(PRODUCT_ID_OK, OK).jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK);
+		verify(compositeIntegration, times(2)).getProduct(PRODUCT_ID_OK);
+	}
+
+	@Test
+	void concurrentGetProductIsCoalesced() {
+		when(compositeIntegration.getProduct(PRODUCT_ID_OK))
+				.thenReturn(Mono.just(new Product(PRODUCT_ID_OK, "name", 1, "mock-address")).delayElement(Duration.ofMillis(200)));
+
+		StepVerifier.create(Mono.zip(compositeService.getProduct(PRODUCT_ID_OK, null), compositeService.getProduct(PRODUCT_ID_OK, null)))
+				.assertNext(aggregates -> assertSame(aggregates.getT1().getBody(), aggregates.getT2().getBody()))
+				.verifyComplete();
+
+		verify(compositeIntegration, times(1)).getProduct(PRODUCT_ID_OK);
+	}
+
+	@Test
+	void concurrentGetProductWithAShorterDeadlineIsNotCoalesced() {
+		when(compositeIntegration.getRecommendations(PRODUCT_ID_OK))
+				.thenReturn(Flux.just(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock address")).delayElements(Duration.ofMillis(300)));
+
+		Mono<ResponseEntity<ProductAggregate>> hurried = compositeService.getProduct(PRODUCT_ID_OK, null)
+				.contextWrite(Context.of(Deadline.class, Deadline.after(Duration.ofMillis(100))));
+		Mono<ResponseEntity<ProductAggregate>> patient = compositeService.getProduct(PRODUCT_ID_OK, null)
+				.contextWrite(Context.of(Deadline.class, Deadline.after(Duration.ofSeconds(5))));
+
+		StepVerifier.create(Mono.zip(hurried, patient))
+				.assertNext(responses -> {
+					assertEquals(List.of("recommendations"), responses.getT1().getBody().getMissing());
+					assertTrue(responses.getT2().getBody().getMissing().isEmpty());
+					assertEquals(1, responses.getT2().getBody().getRecommendations().size());
+				})
+				.verifyComplete();
+
+		verify(compositeIntegration, times(2)).getProduct(PRODUCT_ID_OK);
+	}
+
+	@Test
+	void getProductReturnsPartialAggregateAtDeadline() {
+		when(compositeIntegration.getRecommendations(PRODUCT_ID_OK)).thenReturn(Flux.never());
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_OK)
+				.header(Deadline.HEADER, "200")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK)
+				.jsonPath("$.reviews.length()").isEqualTo(1)
+				.jsonPath("$.missing.length()").isEqualTo(1)
+				.jsonPath("$.missing[0]").isEqualTo("recommendations");
+
+		// A partial aggregate is not cached
+		when(compositeIntegration.getRecommendations(PRODUCT_ID_OK))
+				.thenReturn(Flux.just(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock address")));
+		getAndVerifyProduct(PRODUCT_ID_OK, OK)
+				.jsonPath("$.recommendations.length()").isEqualTo(1)
+				.jsonPath("$.missing.length()").isEqualTo(0);
+	}
+
+	@Test
+	void getProductServesStaleReviewsWhenTheyFail() {
+		getAndVerifyProduct(PRODUCT_ID_OK, OK).jsonPath("$.stale.length()").isEqualTo(0);
+		cache.invalidateAll();
+
+		when(compositeIntegration.getReviews(PRODUCT_ID_OK)).thenReturn(Flux.error(new IllegalStateException("review-service is down")));
+
+		getAndVerifyProduct(PRODUCT_ID_OK, OK)
+				.jsonPath("$.reviews.length()").isEqualTo(1)
+				.jsonPath("$.missing.length()").isEqualTo(0)
+				.jsonPath("$.stale.length()").isEqualTo(1)
+				.jsonPath("$.stale[0]").isEqualTo("reviews");
+	}
+
+	@Test
+	void getProductTimesOutWithoutProductAtDeadline() {
+		when(compositeIntegration.getProduct(PRODUCT_ID_OK)).thenReturn(Mono.never());
+
+		getAndVerifyProduct(PRODUCT_ID_OK, HttpStatus.GATEWAY_TIMEOUT, "200");
+	}
+
+	@Test
+	void getProductWithHugeRequestTimeout() {
+		getAndVerifyProduct(PRODUCT_ID_OK, OK, String.valueOf(Long.MAX_VALUE))
+				.jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK);
+	}
+
+	@Test
+	void getProductWithInvalidRequestTimeout() {
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_OK)
+				.header(Deadline.HEADER, "99999999999999999999")
+				.exchange()
+				.expectStatus().isBadRequest();
+	}
+
+	@Test
+	void getProductSectionsStreamsTheProductFirst() {
+		when(compositeIntegration.getReviews(PRODUCT_ID_OK))
+				.thenReturn(Flux.just(new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", "mock address")).delayElements(Duration.ofMillis(100)));
+
+		Flux<ProductAggregateSection> sections = client.get()
+				.uri("/product-composite/" + PRODUCT_ID_OK)
+				.accept(MediaType.APPLICATION_NDJSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+				.returnResult(ProductAggregateSection.class)
+				.getResponseBody();
+
+		StepVerifier.create(sections)
+				.assertNext(section -> assertEquals(ProductAggregateSection.PRODUCT, section.getSection()))
+				.assertNext(section -> assertEquals(ProductAggregateSection.RECOMMENDATIONS, section.getSection()))
+				.assertNext(section -> {
+					assertEquals(ProductAggregateSection.REVIEWS, section.getSection());
+					assertEquals(1, section.getReviews().size());
+					assertEquals("fresh", section.getStatus());
+				})
+				.verifyComplete();
+	}
+
+	@Test
+	void getProductSectionsNotFound() {
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_NOT_FOUND)
+				.accept(MediaType.APPLICATION_NDJSON)
+				.exchange()
+				.expectStatus().isEqualTo(HttpStatus.NOT_FOUND);
+	}
+
+	@Test
+	void getProductsByIds() {
+		client.get()
+				.uri("/product-composite?productIds=" + PRODUCT_ID_OK + "," + PRODUCT_ID_NOT_FOUND + ",-1")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(3)
+				.jsonPath("$[0].productId").isEqualTo(PRODUCT_ID_OK)
+				.jsonPath("$[0].status").isEqualTo(200)
+				.jsonPath("$[0].aggregate.recommendations.length()").isEqualTo(1)
+				.jsonPath("$[0].aggregate.reviews.length()").isEqualTo(1)
+				.jsonPath("$[1].productId").isEqualTo(PRODUCT_ID_NOT_FOUND)
+				.jsonPath("$[1].status").isEqualTo(404)
+				.jsonPath("$[1].message").isEqualTo("No product found for productId: " + PRODUCT_ID_NOT_FOUND)
+				.jsonPath("$[2].status").isEqualTo(422);
+	}
+
 	@Test
 	void getProductNotFound() {
 		client.get()
@@ -129,13 +451,49 @@ class ProductCompositeServiceApplicationTests {
 				.jsonPath("$.path").isEqualTo("/product-composite/" + PRODUCT_ID_INVALID)
 				.jsonPath("$.message").isEqualTo("INVALID: " + PRODUCT_ID_INVALID);
 	}
+
+	@Test
+	void circuitBreakersAreExposedOnActuator() {
+		client.get()
+				.uri("/actuator/circuitbreakers")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.circuitBreakers['product-service'].state").isEqualTo("CLOSED")
+				.jsonPath("$.circuitBreakers['recommendation-service'].state").isEqualTo("CLOSED")
+				.jsonPath("$.circuitBreakers['review-service'].state").isEqualTo("CLOSED");
+	}
+
+	@Test
+	void onlyTheNeededActuatorEndpointsAreExposed() {
+		client.get()
+				.uri("/actuator/health")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.status").isEqualTo("UP")
+				.jsonPath("$.components").doesNotExist();
+
+		client.get().uri("/actuator/env").exchange().expectStatus().isNotFound();
+		client.get().uri("/actuator/heapdump").exchange().expectStatus().isNotFound();
+	}
+
 	@Test
 	void contextLoads() {
 	}
 
 	private WebTestClient.BodyContentSpec getAndVerifyProduct(int productId, HttpStatus expectedStatus) {
+		return getAndVerifyProduct(productId, expectedStatus, null);
+	}
+
+	private WebTestClient.BodyContentSpec getAndVerifyProduct(int productId, HttpStatus expectedStatus, String requestTimeout) {
 		return client.get()
 				.uri("/product-composite/" + productId)
+				.headers(headers -> {
+					if (requestTimeout != null) {
+						headers.set(Deadline.HEADER, requestTimeout);
+					}
+				})
 				.accept(APPLICATION_JSON)
 				.exchange()
 				.expectStatus().isEqualTo(expectedStatus)
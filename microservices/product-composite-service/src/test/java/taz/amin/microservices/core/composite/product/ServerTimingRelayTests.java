@@ -0,0 +1,47 @@
+package taz.amin.microservices.core.composite.product;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.test.StepVerifier;
+import taz.amin.api.core.ServerTiming;
+import taz.amin.microservices.core.composite.product.services.DownstreamProperties;
+import taz.amin.microservices.core.composite.product.services.DownstreamWebClientFactory;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServerTimingRelayTests {
+
+	@Test
+	void entriesOfTheCoreServicesAreRelayed() {
+		DisposableServer server = HttpServer.create()
+				.port(0)
+				.route(routes -> routes.get("/product/1", (request, response) -> response
+						.header("Content-Type", "application/json")
+						.header(ServerTiming.HEADER, "db;desc=\"getProduct\";dur=2.5, total;dur=3.0")
+						.sendString(Mono.just("{\"productId\":1}"))))
+				.bindNow();
+		DownstreamWebClientFactory factory = new DownstreamWebClientFactory(WebClient.builder(), CircuitBreakerRegistry.ofDefaults(), new SimpleMeterRegistry());
+		try {
+			DownstreamProperties.Downstream downstream = new DownstreamProperties.Downstream();
+			downstream.setHost("localhost");
+			downstream.setPort(server.port());
+			WebClient productClient = factory.create("product-service", downstream);
+			ServerTiming timing = new ServerTiming();
+
+			StepVerifier.create(productClient.get().uri(downstream.getBaseUrl() + "/product/1").retrieve().bodyToMono(String.class)
+							.contextWrite(context -> context.put(ServerTiming.class, timing)))
+					.expectNextCount(1)
+					.verifyComplete();
+
+			assertTrue(timing.toHeaderValue().startsWith("product-service.db;desc=\"getProduct\";dur=2.5, product-service.total;dur=3.0, total;dur="));
+		} finally {
+			factory.destroy();
+			server.disposeNow();
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package taz.amin.microservices.core.composite.product;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import taz.amin.api.core.ServerTiming;
+import taz.amin.api.core.product.Product;
+import taz.amin.api.core.recommendation.Recommendation;
+import taz.amin.api.core.review.Review;
+import taz.amin.microservices.core.composite.product.services.ProductCompositeIntegration;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"app.server-timing.enabled=true",
+		"app.product-composite.cache.enabled=false"})
+class ServerTimingTests {
+	private static final int PRODUCT_ID = 1;
+
+	@MockBean
+	private ProductCompositeIntegration compositeIntegration;
+	@Autowired
+	private WebTestClient client;
+
+	@Test
+	void responseCarriesTheTimeSpentPerStep() {
+		when(compositeIntegration.getProduct(PRODUCT_ID))
+				.thenReturn(Mono.just(new Product(PRODUCT_ID, "name", 1, "mock-address")).delayElement(Duration.ofMillis(50)));
+		when(compositeIntegration.getRecommendations(PRODUCT_ID))
+				.thenReturn(Flux.fromIterable(singletonList(new Recommendation(PRODUCT_ID, 1, "author", 1, "content", "mock address"))));
+		when(compositeIntegration.getReviews(PRODUCT_ID))
+				.thenReturn(Flux.fromIterable(singletonList(new Review(PRODUCT_ID, 1, "author", "subject", "content", "mock address"))));
+
+		String serverTiming = client.get()
+				.uri("/product-composite/" + PRODUCT_ID)
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(String.class)
+				.getResponseHeaders()
+				.getFirst(ServerTiming.HEADER);
+
+		List<String> names = entryNames(serverTiming);
+		assertTrue(names.containsAll(List.of("product", "recommendations", "reviews", "aggregate", "serialize", "total")), serverTiming);
+		assertTrue(duration(serverTiming, "product") >= 50, serverTiming);
+	}
+
+	private static List<String> entryNames(String serverTiming) {
+		return Arrays.stream(serverTiming.split(","))
+				.map(entry -> entry.trim().split(";")[0])
+				.collect(Collectors.toList());
+	}
+
+	private static double duration(String serverTiming, String name) {
+		for (String entry : serverTiming.split(",")) {
+			String[] fields = entry.trim().split(";");
+			if (fields[0].equals(name)) {
+				for (String field : fields) {
+					if (field.startsWith("dur=")) {
+						return Double.parseDouble(field.substring(4));
+					}
+				}
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,82 @@
+package taz.amin.microservices.core.composite.product;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import taz.amin.microservices.core.composite.product.services.StaleWhileRevalidate;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StaleWhileRevalidateTests {
+
+	private final StaleWhileRevalidate<Integer, String> values = new StaleWhileRevalidate<>(
+			"test", new SimpleMeterRegistry(), true, 100, Duration.ofMinutes(1), Duration.ofMillis(50));
+
+	@Test
+	void slowLookupServesStaleValueAndRefreshesInTheBackground() {
+		StepVerifier.create(values.get(1, null, () -> Mono.just("v1")))
+				.assertNext(result -> assertFalse(result.isStale()))
+				.verifyComplete();
+
+		StepVerifier.create(values.get(1, null, () -> Mono.just("v2").delayElement(Duration.ofMillis(300))))
+				.assertNext(result -> {
+					assertTrue(result.isStale());
+					assertEquals("v1", result.getValue());
+				})
+				.verifyComplete();
+
+		// The slow lookup was not cancelled, it updates the last known value once it completes
+		StepVerifier.create(Mono.delay(Duration.ofMillis(500)).map(x -> values.getLastKnown(1)))
+				.expectNext("v2")
+				.verifyComplete();
+	}
+
+	@Test
+	void failedLookupWithoutLastKnownValueIsMissing() {
+		StepVerifier.create(values.get(1, null, () -> Mono.error(new IllegalStateException("down"))))
+				.assertNext(result -> {
+					assertFalse(result.isStale());
+					assertNull(result.getValue());
+				})
+				.verifyComplete();
+	}
+
+	@Test
+	void invalidatedValueIsNotServed() {
+		values.get(1, null, () -> Mono.just("v1")).block();
+		values.invalidate(1);
+
+		assertNull(values.getLastKnown(1));
+	}
+
+	@Test
+	void refreshInFlightWhenAllAreInvalidatedIsNotServed() {
+		values.get(1, null, () -> Mono.just("v1")).block();
+
+		// Served stale, the refresh of the pre-delete value keeps running in the background
+		StepVerifier.create(values.get(1, null, () -> Mono.just("v2").delayElement(Duration.ofMillis(300))))
+				.assertNext(result -> assertTrue(result.isStale()))
+				.verifyComplete();
+
+		values.invalidateAll();
+		values.get(1, null, () -> Mono.just("v3")).block();
+
+		StepVerifier.create(values.get(1, null, () -> Mono.just("v4")))
+				.assertNext(result -> {
+					assertFalse(result.isStale());
+					assertEquals("v4", result.getValue());
+				})
+				.verifyComplete();
+
+		// Nor is it written back once it completes
+		StepVerifier.create(Mono.delay(Duration.ofMillis(500)).map(x -> values.getLastKnown(1)))
+				.expectNext("v4")
+				.verifyComplete();
+	}
+}
@@ -6,6 +6,8 @@ import org.mapstruct.Mappings;
 import taz.amin.api.core.product.Product;
 import taz.amin.microservices.core.product.persistence.ProductEntity;
 
+import java.util.List;
+
 @Mapper(componentModel = "spring") //generated mapper is a spring bean
 public interface ProductMapper {
 
@@ -19,4 +21,6 @@ public interface ProductMapper {
             @Mapping(target = "version", ignore = true)
     })
     ProductEntity apiToEntity(Product api);
+
+    List<Product> entityListToApiList(List<ProductEntity> entityList);
 }
@@ -4,16 +4,29 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
 import taz.amin.microservices.core.product.persistence.ProductEntity;
 import taz.amin.microservices.core.product.persistence.ProductRepository;
+import taz.amin.util.http.EntityTags;
 import taz.amin.util.http.ServiceUtil;
 
+import taz.amin.api.core.Deadline;
+import taz.amin.api.core.ServerTiming;
 import taz.amin.api.core.product.Product;
 import taz.amin.api.core.product.ProductService;
 import taz.amin.api.exceptions.InvalidInputException;
 import taz.amin.api.exceptions.NotFoundException;
 
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+import static taz.amin.util.persistence.MongoQueries.limitedTo;
+import static taz.amin.util.persistence.MongoQueries.withinDeadline;
+
 @RestController
 public class ProductServiceImpl implements ProductService {
     private static final Logger LOG = LoggerFactory.getLogger(ProductServiceImpl.class);
@@ -22,24 +35,49 @@ public class ProductServiceImpl implements ProductService {
     private final ProductRepository repository;
 
     private final ProductMapper mapper;
+    private final MongoTemplate mongoTemplate;
 
     @Autowired
-    public ProductServiceImpl(ServiceUtil serviceUtil, ProductRepository repository, ProductMapper mapper) {
+    public ProductServiceImpl(ServiceUtil serviceUtil, ProductRepository repository, ProductMapper mapper, MongoTemplate mongoTemplate) {
         this.serviceUtil = serviceUtil;
         this.repository = repository;
         this.mapper = mapper;
+        this.mongoTemplate = mongoTemplate;
     }
 
     @Override
-    public Product getProduct(int productId) {
+    public ResponseEntity<Product> getProduct(int productId, Deadline deadline, ServerTiming timing) {
         if (productId < 1) {
             throw new InvalidInputException("Invalid productId: " + productId);
         }
-        ProductEntity productEntity = repository.findByProductId(productId).orElseThrow(() -> new NotFoundException("No product found for productId: " + productId));
+        ProductEntity productEntity = withinDeadline(deadline, timing, "getProduct", () ->
+                mongoTemplate.findOne(limitedTo(query(where("productId").is(productId)), deadline), ProductEntity.class));
+        if (productEntity == null) {
+            throw new NotFoundException("No product found for productId: " + productId);
+        }
         Product product = mapper.entityToApi(productEntity);
         product.setServiceAddress(serviceUtil.getServiceAddress());
         LOG.debug("getProduct: found productId: {}", product.getProductId());
-        return product;
+
+        String etag = EntityTags.builder()
+                .add(productEntity.getId(), productEntity.getVersion())
+                .build();
+        return EntityTags.ok(etag).body(product);
+    }
+
+    @Override
+    public List<Product> getProducts(List<Integer> productIds, Deadline deadline, ServerTiming timing) {
+        productIds.stream().filter(productId -> productId < 1).findFirst().ifPresent(productId -> {
+            throw new InvalidInputException("Invalid productId: " + productId);
+        });
+
+        // One $in query for all the products instead of one query per product
+        List<ProductEntity> productEntities = withinDeadline(deadline, timing, "getProducts", () ->
+                mongoTemplate.find(limitedTo(query(where("productId").in(productIds)).with(Sort.by("productId")), deadline), ProductEntity.class));
+        List<Product> products = mapper.entityListToApiList(productEntities);
+        products.forEach(product -> product.setServiceAddress(serviceUtil.getServiceAddress()));
+        LOG.debug("getProducts: found {} of {} products", products.size(), productIds.size());
+        return products;
     }
 
     @Override
@@ -4,18 +4,24 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Mono;
+import taz.amin.api.core.Deadline;
+import taz.amin.api.core.ServerTiming;
 import taz.amin.api.core.product.Product;
 import taz.amin.microservices.core.product.persistence.ProductRepository;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.http.HttpStatus.UNPROCESSABLE_ENTITY;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {"app.server-timing.enabled=true"})
 class ProductServiceApplicationTests extends MongoDbTestBase{
 	@Autowired
 	private WebTestClient client;
@@ -38,6 +44,127 @@ class ProductServiceApplicationTests extends MongoDbTestBase{
 		getAndVerifyProduct(""+productId, HttpStatus.OK).jsonPath("$.productId").isEqualTo(productId);
 	}
 
+	@Test
+	void getProductAsSmile() {
+
+		int productId = 1;
+		MediaType smile = MediaType.valueOf("application/x-jackson-smile");
+
+		postAndVerifyProduct(productId, HttpStatus.OK);
+
+		Product product = client.get()
+				.uri("/product/" + productId)
+				.accept(smile)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(smile)
+				.expectBody(Product.class)
+				.returnResult()
+				.getResponseBody();
+		assertEquals(productId, product.getProductId());
+		assertEquals("Name " + productId, product.getName());
+
+		// JSON stays the default for clients that accept anything
+		client.get()
+				.uri("/product/" + productId)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(APPLICATION_JSON);
+	}
+
+	@Test
+	void getProductTagIsWeakAndVariesByRepresentation() {
+
+		int productId = 1;
+
+		postAndVerifyProduct(productId, HttpStatus.OK);
+		String etag = getProductETag(productId);
+		assertTrue(etag.startsWith("W/\""), etag);
+
+		// The tag is of the product, the Smile and JSON representations are told apart by the Vary header
+		client.get()
+				.uri("/product/" + productId)
+				.accept(MediaType.valueOf("application/x-jackson-smile"))
+				.header(HttpHeaders.IF_NONE_MATCH, etag)
+				.exchange()
+				.expectStatus().isNotModified()
+				.expectHeader().valueEquals(HttpHeaders.VARY, "Accept, Accept-Encoding");
+	}
+
+	@Test
+	void getProductIsNotModified() {
+
+		int productId = 1;
+
+		postAndVerifyProduct(productId, HttpStatus.OK);
+		String etag = getProductETag(productId);
+
+		client.get()
+				.uri("/product/" + productId)
+				.accept(APPLICATION_JSON)
+				.header(HttpHeaders.IF_NONE_MATCH, etag)
+				.exchange()
+				.expectStatus().isNotModified()
+				.expectBody().isEmpty();
+
+		// A product that is deleted and created again has the same version, but is another entity
+		deleteAndVerifyProduct(productId, HttpStatus.OK);
+		postAndVerifyProduct(productId, HttpStatus.OK);
+		assertNotEquals(etag, getProductETag(productId));
+	}
+
+	@Test
+	void getProductsByIds() {
+		postAndVerifyProduct(1, HttpStatus.OK);
+		postAndVerifyProduct(2, HttpStatus.OK);
+
+		client.get()
+				.uri("/product?productIds=2,1,13")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(HttpStatus.OK)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[0].productId").isEqualTo(1)
+				.jsonPath("$[1].productId").isEqualTo(2);
+	}
+
+	@Test
+	void getProductWithinDeadline() {
+		postAndVerifyProduct(1, HttpStatus.OK);
+
+		client.get()
+				.uri("/product/1")
+				.header(Deadline.HEADER, "1000")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(HttpStatus.OK)
+				.expectBody()
+				.jsonPath("$.productId").isEqualTo(1);
+
+		// The caller has already given up, so the request is rejected without being handled
+		client.get()
+				.uri("/product/1")
+				.header(Deadline.HEADER, "0")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
+	}
+
+	@Test
+	void getProductReportsTheTimeSpentInTheDatabase() {
+		postAndVerifyProduct(1, HttpStatus.OK);
+
+		client.get()
+				.uri("/product/1")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().value(ServerTiming.HEADER, serverTiming ->
+						assertTrue(serverTiming.contains("db;desc=\"getProduct\";dur="), serverTiming));
+	}
+
 	@Test
 	void duplicateError() {
 		int productId = 1;
@@ -88,6 +215,16 @@ class ProductServiceApplicationTests extends MongoDbTestBase{
 				.expectBody();
 	}
 
+	private String getProductETag(int productId) {
+		return client.get()
+				.uri("/product/" + productId)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(Product.class)
+				.getResponseHeaders().getETag();
+	}
+
 	private WebTestClient.BodyContentSpec postAndVerifyProduct(int productId, HttpStatus expectedStatus) {
 		Product product = new Product(productId, "Name " + productId, productId, "SA");
 		return client.post()
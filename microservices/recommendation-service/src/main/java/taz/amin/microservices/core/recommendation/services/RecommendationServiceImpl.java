@@ -1,41 +1,80 @@
 package taz.amin.microservices.core.recommendation.services;
 
+import com.mongodb.bulk.BulkWriteError;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import taz.amin.api.core.BatchItemResult;
+import taz.amin.api.core.CursorPage;
+import taz.amin.api.core.Deadline;
+import taz.amin.api.core.ServerTiming;
 import taz.amin.api.core.recommendation.Recommendation;
 import taz.amin.api.core.recommendation.RecommendationService;
 import taz.amin.api.exceptions.InvalidInputException;
 import taz.amin.microservices.core.recommendation.persistence.RecommendationEntity;
 import taz.amin.microservices.core.recommendation.persistence.RecommendationRepository;
+import taz.amin.util.http.EntityTags;
 import taz.amin.util.http.ServiceUtil;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+import static taz.amin.util.persistence.MongoQueries.limitedTo;
+import static taz.amin.util.persistence.MongoQueries.withinDeadline;
 
 @RestController
 public class RecommendationServiceImpl implements RecommendationService {
     private static Logger LOG = LoggerFactory.getLogger(RecommendationServiceImpl.class);
+    private static final int DUPLICATE_KEY_ERROR_CODE = 11000;
     private final ServiceUtil serviceUtil;
     private final RecommendationRepository repository;
     private final RecommendationMapper mapper;
+    private final MongoTemplate mongoTemplate;
+    private final int streamFetchSize;
+    private final int maxPageLimit;
 
 
     @Autowired
-    public RecommendationServiceImpl(ServiceUtil serviceUtil, RecommendationRepository repository, RecommendationMapper mapper) {
+    public RecommendationServiceImpl(
+            ServiceUtil serviceUtil,
+            RecommendationRepository repository,
+            RecommendationMapper mapper,
+            MongoTemplate mongoTemplate,
+            @Value("${app.stream.fetch-size:500}") int streamFetchSize,
+            @Value("${app.page.max-limit:100}") int maxPageLimit) {
         this.serviceUtil = serviceUtil;
         this.repository = repository;
         this.mapper = mapper;
+        this.mongoTemplate = mongoTemplate;
+        this.streamFetchSize = streamFetchSize;
+        this.maxPageLimit = maxPageLimit;
     }
 
     @Override
-    public List<Recommendation> getRecommendations(int productId) {
+    public ResponseEntity<List<Recommendation>> getRecommendations(int productId, Deadline deadline, ServerTiming timing) {
         if (productId < 1) {
             throw new InvalidInputException("Invalid productId: " + productId);
         }
 
-        List<RecommendationEntity> recommendationEntities = repository.findByProductId(productId);
+        List<RecommendationEntity> recommendationEntities = withinDeadline(deadline, timing, "getRecommendations", () ->
+                mongoTemplate.find(limitedTo(query(where("productId").is(productId)).with(Sort.by("recommendationId")), deadline), RecommendationEntity.class));
         List<Recommendation> recommendations = mapper.entityListToApiList(recommendationEntities);
         recommendations.forEach(recommendation -> {
             recommendation.setServiceAddress(serviceUtil.getServiceAddress());
@@ -43,6 +82,75 @@ public class RecommendationServiceImpl implements RecommendationService {
 
         LOG.debug("/recommendation response size: {}", recommendations.size());
 
+        // Sorted, so that the tag does not depend on the order the database returns them in
+        EntityTags etag = EntityTags.builder().add(recommendationEntities.size());
+        recommendationEntities.forEach(entity -> etag.add(entity.getId(), entity.getVersion()));
+        return EntityTags.ok(etag.build()).body(recommendations);
+    }
+
+    @Override
+    public CursorPage<Recommendation> getRecommendationPage(int productId, int limit, String after, Deadline deadline, ServerTiming timing) {
+        if (productId < 1) {
+            throw new InvalidInputException("Invalid productId: " + productId);
+        }
+        if (limit < 1 || limit > maxPageLimit) {
+            throw new InvalidInputException("Invalid limit: " + limit + ", must be between 1 and " + maxPageLimit);
+        }
+
+        // A seek on the (productId, recommendationId) index instead of a skip, one extra document tells if there is a next page
+        Criteria criteria = where("productId").is(productId);
+        if (after != null) {
+            criteria = criteria.and("recommendationId").gt(CursorPage.decodeCursor(productId, after));
+        }
+        Query pageQuery = query(criteria).with(Sort.by("recommendationId")).limit(limit + 1);
+
+        List<RecommendationEntity> recommendationEntities = withinDeadline(deadline, timing, "getRecommendationPage", () ->
+                mongoTemplate.find(limitedTo(pageQuery, deadline), RecommendationEntity.class));
+        List<Recommendation> recommendations = mapper.entityListToApiList(recommendationEntities);
+        recommendations.forEach(recommendation -> {
+            recommendation.setServiceAddress(serviceUtil.getServiceAddress());
+        });
+
+        LOG.debug("/recommendation page size: {}", recommendations.size());
+
+        return CursorPage.of(productId, recommendations, limit, Recommendation::getRecommendationId);
+    }
+
+    @Override
+    public Flux<Recommendation> streamRecommendations(int productId) {
+        if (productId < 1) {
+            throw new InvalidInputException("Invalid productId: " + productId);
+        }
+
+        // The cursor fetches streamFetchSize documents per round trip, and is only advanced as the
+        // client consumes the response. Cancelling the response closes the cursor
+        Query query = query(where("productId").is(productId)).cursorBatchSize(streamFetchSize);
+        return Flux.fromStream(() -> mongoTemplate.stream(query, RecommendationEntity.class))
+                .map(entity -> {
+                    Recommendation recommendation = mapper.entityToApi(entity);
+                    recommendation.setServiceAddress(serviceUtil.getServiceAddress());
+                    return recommendation;
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public List<Recommendation> getRecommendations(List<Integer> productIds, Deadline deadline, ServerTiming timing) {
+        productIds.stream().filter(productId -> productId < 1).findFirst().ifPresent(productId -> {
+            throw new InvalidInputException("Invalid productId: " + productId);
+        });
+
+        // One $in query for all the products, sorted so that the recommendations of a product are grouped together
+        Sort sort = Sort.by("productId", "recommendationId");
+        List<RecommendationEntity> recommendationEntities = withinDeadline(deadline, timing, "getRecommendations", () ->
+                mongoTemplate.find(limitedTo(query(where("productId").in(productIds)).with(sort), deadline), RecommendationEntity.class));
+        List<Recommendation> recommendations = mapper.entityListToApiList(recommendationEntities);
+        recommendations.forEach(recommendation -> {
+            recommendation.setServiceAddress(serviceUtil.getServiceAddress());
+        });
+
+        LOG.debug("/recommendation response size: {} for {} products", recommendations.size(), productIds.size());
+
         return recommendations;
     }
 
@@ -58,6 +166,41 @@ public class RecommendationServiceImpl implements RecommendationService {
         }
     }
 
+    @Override
+    public List<BatchItemResult> createRecommendations(List<Recommendation> body) {
+        List<RecommendationEntity> entities = mapper.apiListToEntityList(body);
+        entities.forEach(entity -> entity.setVersion(0));
+
+        // One unordered bulk insert, a failing document does not stop the others from being inserted
+        Map<Integer, BulkWriteError> errors = new HashMap<>();
+        if (!entities.isEmpty()) {
+            try {
+                mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RecommendationEntity.class)
+                        .insert(entities)
+                        .execute();
+            } catch (BulkOperationException boe) {
+                boe.getErrors().forEach(error -> errors.put(error.getIndex(), error));
+            }
+        }
+
+        List<BatchItemResult> results = new ArrayList<>(body.size());
+        for (int i = 0; i < body.size(); i++) {
+            Recommendation recommendation = body.get(i);
+            BulkWriteError error = errors.get(i);
+            if (error == null) {
+                results.add(new BatchItemResult(i, HttpStatus.OK.value(), null));
+            } else if (error.getCode() == DUPLICATE_KEY_ERROR_CODE) {
+                results.add(new BatchItemResult(i, HttpStatus.UNPROCESSABLE_ENTITY.value(),
+                        "Duplicate key, Product Id: " + recommendation.getProductId() + ", Recommendation Id:" + recommendation.getRecommendationId()));
+            } else {
+                results.add(new BatchItemResult(i, HttpStatus.INTERNAL_SERVER_ERROR.value(), error.getMessage()));
+            }
+        }
+
+        LOG.debug("createRecommendations: created {} of {} recommendation entities", body.size() - errors.size(), body.size());
+        return results;
+    }
+
     @Override
     public void deleteRecommendations(int productId) {
         LOG.debug("deleteRecommendations: tries to delete recommendations for the product with productId: {}", productId);
@@ -4,16 +4,25 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import taz.amin.api.core.CursorPage;
+import taz.amin.api.core.ServerTiming;
 import taz.amin.api.core.recommendation.Recommendation;
 import taz.amin.microservices.core.recommendation.persistence.RecommendationRepository;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
 
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {"app.server-timing.enabled=true"})
 class RecommendationServiceApplicationTests extends MongoDbTestBase{
 	@Autowired
 	private WebTestClient client;
@@ -41,6 +50,114 @@ class RecommendationServiceApplicationTests extends MongoDbTestBase{
 				.jsonPath("$[2].recommendationId").isEqualTo(3);
 	}
 
+	@Test
+	void getRecommendationsIsNotModified() {
+
+		int productId = 1;
+
+		postAndVerifyRecommendation(productId, 1, HttpStatus.OK);
+		String etag = client.get()
+				.uri("/recommendation?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(Recommendation.class)
+				.getResponseHeaders().getETag();
+
+		client.get()
+				.uri("/recommendation?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.header(HttpHeaders.IF_NONE_MATCH, etag)
+				.exchange()
+				.expectStatus().isNotModified();
+
+		postAndVerifyRecommendation(productId, 2, HttpStatus.OK);
+		client.get()
+				.uri("/recommendation?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.header(HttpHeaders.IF_NONE_MATCH, etag)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(2);
+	}
+
+	@Test
+	void getRecommendationPages() {
+
+		int productId = 1;
+
+		postAndVerifyRecommendation(productId, 3, HttpStatus.OK);
+		postAndVerifyRecommendation(productId, 1, HttpStatus.OK);
+		postAndVerifyRecommendation(productId, 2, HttpStatus.OK);
+		postAndVerifyRecommendation(2, 1, HttpStatus.OK);
+
+		getAndVerifyRecommendation("?productId=" + productId + "&limit=2", HttpStatus.OK)
+				.jsonPath("$.items.length()").isEqualTo(2)
+				.jsonPath("$.items[0].recommendationId").isEqualTo(1)
+				.jsonPath("$.items[1].recommendationId").isEqualTo(2)
+				.jsonPath("$.next").isEqualTo(CursorPage.encodeCursor(productId, 2));
+
+		getAndVerifyRecommendation("?productId=" + productId + "&limit=2&after=" + CursorPage.encodeCursor(productId, 2), HttpStatus.OK)
+				.jsonPath("$.items.length()").isEqualTo(1)
+				.jsonPath("$.items[0].recommendationId").isEqualTo(3)
+				.jsonPath("$.next").doesNotExist();
+
+		getAndVerifyRecommendation("?productId=" + productId + "&limit=2&after=" + CursorPage.encodeCursor(2, 2), HttpStatus.UNPROCESSABLE_ENTITY);
+		getAndVerifyRecommendation("?productId=" + productId + "&limit=0", HttpStatus.UNPROCESSABLE_ENTITY);
+	}
+
+	@Test
+	void streamRecommendationsByProductId() {
+
+		int productId = 1;
+
+		postAndVerifyRecommendation(productId, 1, HttpStatus.OK);
+		postAndVerifyRecommendation(productId, 2, HttpStatus.OK);
+		postAndVerifyRecommendation(productId, 3, HttpStatus.OK);
+		postAndVerifyRecommendation(2, 1, HttpStatus.OK);
+
+		StepVerifier.create(client.get()
+						.uri("/recommendation?productId=" + productId)
+						.accept(APPLICATION_NDJSON)
+						.exchange()
+						.expectStatus().isOk()
+						.expectHeader().contentType(APPLICATION_NDJSON)
+						.returnResult(Recommendation.class)
+						.getResponseBody())
+				.expectNextCount(3)
+				.verifyComplete();
+	}
+
+	@Test
+	void getRecommendationsByProductIds() {
+
+		postAndVerifyRecommendation(2, 1, HttpStatus.OK);
+		postAndVerifyRecommendation(1, 2, HttpStatus.OK);
+		postAndVerifyRecommendation(1, 1, HttpStatus.OK);
+
+		getAndVerifyRecommendation("?productIds=1,2", HttpStatus.OK)
+				.jsonPath("$.length()").isEqualTo(3)
+				.jsonPath("$[0].productId").isEqualTo(1)
+				.jsonPath("$[0].recommendationId").isEqualTo(1)
+				.jsonPath("$[1].productId").isEqualTo(1)
+				.jsonPath("$[1].recommendationId").isEqualTo(2)
+				.jsonPath("$[2].productId").isEqualTo(2);
+	}
+
+	@Test
+	void getRecommendationsReportTheTimeSpentInTheDatabase() {
+		postAndVerifyRecommendation(1, 1, HttpStatus.OK);
+
+		client.get()
+				.uri("/recommendation?productId=1")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().value(ServerTiming.HEADER, serverTiming ->
+						assertTrue(serverTiming.contains("db;desc=\"getRecommendations\";dur="), serverTiming));
+	}
+
 	@Test
 	void duplicateError() {
 		int productId = 1;
@@ -56,6 +173,32 @@ class RecommendationServiceApplicationTests extends MongoDbTestBase{
 		assertEquals(1, repository.count());
 	}
 
+	@Test
+	void createRecommendationsInBatch() {
+		int productId = 1;
+		postAndVerifyRecommendation(productId, 2, HttpStatus.OK);
+
+		List<Recommendation> batch = List.of(
+				new Recommendation(productId, 1, "Author 1", 1, "Content 1", "sa"),
+				new Recommendation(productId, 2, "Author 2", 2, "Content 2", "sa"),
+				new Recommendation(productId, 3, "Author 3", 3, "Content 3", "sa"));
+
+		client.post()
+				.uri("/recommendation/batch")
+				.body(Mono.just(batch), new ParameterizedTypeReference<List<Recommendation>>() {})
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(HttpStatus.OK)
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(3)
+				.jsonPath("$[0].status").isEqualTo(200)
+				.jsonPath("$[1].status").isEqualTo(422)
+				.jsonPath("$[1].message").isEqualTo("Duplicate key, Product Id: " + productId + ", Recommendation Id:2")
+				.jsonPath("$[2].status").isEqualTo(200);
+
+		assertEquals(3, repository.count());
+	}
+
 	@Test
 	void deleteRecommendation() {
 		int productId = 1;
@@ -1,11 +1,35 @@
 package taz.amin.microservices.core.review.persistence;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 public interface ReviewRepository extends CrudRepository<ReviewEntity, Integer> {
     @Transactional(readOnly = true)
     List<ReviewEntity> findByProductId(int  productId);
+
+    @Transactional(readOnly = true)
+    List<ReviewEntity> findByProductIdInOrderByProductIdAscReviewIdAsc(Collection<Integer> productIds);
+
+    /**
+     * The first page of the reviews of a product, and the following pages below, as seeks on the (productId, reviewId) index.
+     */
+    @Transactional(readOnly = true)
+    List<ReviewEntity> findByProductIdOrderByReviewIdAsc(int productId, Limit limit);
+
+    @Transactional(readOnly = true)
+    List<ReviewEntity> findByProductIdAndReviewIdGreaterThanOrderByReviewIdAsc(int productId, int reviewId, Limit limit);
+
+    /**
+     * @return "productId/reviewId" of the existing reviews of the products, without loading the reviews themselves
+     */
+    @Transactional(readOnly = true)
+    @Query("select concat(cast(r.productId as String), '/', cast(r.reviewId as String)) from ReviewEntity r where r.productId in :productIds")
+    Set<String> findKeysByProductIdIn(@Param("productIds") Collection<Integer> productIds);
 }
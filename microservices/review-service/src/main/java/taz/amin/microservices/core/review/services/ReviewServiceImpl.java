@@ -1,19 +1,41 @@
 package taz.amin.microservices.core.review.services;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.jpa.HibernateHints;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionTimedOutException;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import taz.amin.api.core.BatchItemResult;
+import taz.amin.api.core.CursorPage;
+import taz.amin.api.core.Deadline;
+import taz.amin.api.core.ServerTiming;
+import taz.amin.api.exceptions.DeadlineExceededException;
 import taz.amin.api.exceptions.InvalidInputException;
 import taz.amin.api.core.review.Review;
 import taz.amin.api.core.review.ReviewService;
 import taz.amin.microservices.core.review.persistence.ReviewEntity;
 import taz.amin.microservices.core.review.persistence.ReviewRepository;
+import taz.amin.util.http.EntityTags;
 import taz.amin.util.http.ServiceUtil;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.HttpStatus.UNPROCESSABLE_ENTITY;
 
 @RestController
 public class ReviewServiceImpl implements ReviewService {
@@ -25,11 +47,30 @@ public class ReviewServiceImpl implements ReviewService {
 
     private final ServiceUtil serviceUtil;
 
+    private final PlatformTransactionManager transactionManager;
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final int streamFetchSize;
+
+    private final int maxPageLimit;
+
     @Autowired
-    public ReviewServiceImpl(ReviewRepository repository, ReviewMapper mapper, ServiceUtil serviceUtil) {
+    public ReviewServiceImpl(
+            ReviewRepository repository,
+            ReviewMapper mapper,
+            ServiceUtil serviceUtil,
+            PlatformTransactionManager transactionManager,
+            EntityManagerFactory entityManagerFactory,
+            @Value("${app.stream.fetch-size:500}") int streamFetchSize,
+            @Value("${app.page.max-limit:100}") int maxPageLimit) {
         this.repository = repository;
         this.mapper = mapper;
         this.serviceUtil = serviceUtil;
+        this.transactionManager = transactionManager;
+        this.entityManagerFactory = entityManagerFactory;
+        this.streamFetchSize = streamFetchSize;
+        this.maxPageLimit = maxPageLimit;
     }
 
     @Override
@@ -47,21 +88,165 @@ public class ReviewServiceImpl implements ReviewService {
     }
 
     @Override
-    public List<Review> getReviews(int productId) {
+    public List<BatchItemResult> createReviews(List<Review> body) {
+
+        // Find the duplicates up front with one query, a duplicate in a JDBC batch would roll back the whole batch
+        Set<Integer> productIds = body.stream().map(Review::getProductId).collect(Collectors.toSet());
+        Set<String> existingKeys = productIds.isEmpty() ? new HashSet<>() : repository.findKeysByProductIdIn(productIds);
+
+        BatchItemResult[] results = new BatchItemResult[body.size()];
+        List<Integer> newIndexes = new ArrayList<>();
+        for (int i = 0; i < body.size(); i++) {
+            Review review = body.get(i);
+            if (existingKeys.add(review.getProductId() + "/" + review.getReviewId())) {
+                newIndexes.add(i);
+            } else {
+                results[i] = duplicateKeyResult(i, review);
+            }
+        }
+
+        List<ReviewEntity> entities = newIndexes.stream().map(i -> mapper.apiToEntity(body.get(i))).collect(Collectors.toList());
+        try {
+            // Inserted in JDBC batches, see spring.jpa.properties.hibernate.jdbc.batch_size
+            repository.saveAll(entities);
+            newIndexes.forEach(i -> results[i] = new BatchItemResult(i, OK.value(), null));
+
+        } catch (DataIntegrityViolationException dive) {
+            // Someone else created one of the reviews after the check above, fall back to one insert per review
+            LOG.debug("createReviews: batch insert failed, retries the reviews one by one: {}", dive.getMessage());
+            newIndexes.forEach(i -> {
+                try {
+                    repository.save(mapper.apiToEntity(body.get(i)));
+                    results[i] = new BatchItemResult(i, OK.value(), null);
+                } catch (DataIntegrityViolationException e) {
+                    results[i] = duplicateKeyResult(i, body.get(i));
+                }
+            });
+        }
+
+        LOG.debug("createReviews: processed {} review entities", body.size());
+        return Arrays.asList(results);
+    }
+
+    private BatchItemResult duplicateKeyResult(int index, Review review) {
+        return new BatchItemResult(index, UNPROCESSABLE_ENTITY.value(),
+                "Duplicate key, Product Id: " + review.getProductId() + ", Review Id:" + review.getReviewId());
+    }
+
+    @Override
+    public ResponseEntity<List<Review>> getReviews(int productId, Deadline deadline, ServerTiming timing) {
 
         if (productId < 1) {
             throw new InvalidInputException("Invalid productId: " + productId);
         }
 
-        List<ReviewEntity> entityList = repository.findByProductId(productId);
+        List<ReviewEntity> entityList = withinDeadline(deadline, timing, "getReviews", () -> repository.findByProductIdOrderByReviewIdAsc(productId, Limit.unlimited()));
         List<Review> list = mapper.entityListToApiList(entityList);
         list.forEach(e -> e.setServiceAddress(serviceUtil.getServiceAddress()));
 
         LOG.debug("getReviews: response size: {}", list.size());
 
+        // Sorted, so that the tag does not depend on the order the database returns them in
+        EntityTags etag = EntityTags.builder().add(entityList.size());
+        entityList.forEach(e -> etag.add(e.getId(), e.getVersion()));
+        return EntityTags.ok(etag.build()).body(list);
+    }
+
+    @Override
+    public CursorPage<Review> getReviewPage(int productId, int limit, String after, Deadline deadline, ServerTiming timing) {
+
+        if (productId < 1) {
+            throw new InvalidInputException("Invalid productId: " + productId);
+        }
+        if (limit < 1 || limit > maxPageLimit) {
+            throw new InvalidInputException("Invalid limit: " + limit + ", must be between 1 and " + maxPageLimit);
+        }
+
+        // One extra row tells if there is a next page
+        Limit pageLimit = Limit.of(limit + 1);
+        Integer afterReviewId = (after == null) ? null : CursorPage.decodeCursor(productId, after);
+        List<ReviewEntity> entityList = withinDeadline(deadline, timing, "getReviewPage", () -> (afterReviewId == null)
+                ? repository.findByProductIdOrderByReviewIdAsc(productId, pageLimit)
+                : repository.findByProductIdAndReviewIdGreaterThanOrderByReviewIdAsc(productId, afterReviewId, pageLimit));
+        List<Review> list = mapper.entityListToApiList(entityList);
+        list.forEach(e -> e.setServiceAddress(serviceUtil.getServiceAddress()));
+
+        LOG.debug("getReviewPage: page size: {}", list.size());
+
+        return CursorPage.of(productId, list, limit, Review::getReviewId);
+    }
+
+    @Override
+    public Flux<Review> streamReviews(int productId) {
+
+        if (productId < 1) {
+            throw new InvalidInputException("Invalid productId: " + productId);
+        }
+
+        // A repository Stream needs a transaction bound to the calling thread, which can not span
+        // the demand of the client. Instead the stream gets an entity manager of its own, that is
+        // closed when the response completes or is cancelled. The rows are fetched streamFetchSize
+        // at a time from a server side cursor, see useCursorFetch in the datasource url, and each
+        // entity is detached once mapped so that the persistence context does not grow either
+        return Flux.using(
+                entityManagerFactory::createEntityManager,
+                entityManager -> Flux.fromStream(() -> entityManager
+                                .createQuery("select r from ReviewEntity r where r.productId = :productId", ReviewEntity.class)
+                                .setParameter("productId", productId)
+                                .setHint(HibernateHints.HINT_FETCH_SIZE, streamFetchSize)
+                                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                                .getResultStream())
+                        .map(entity -> {
+                            entityManager.detach(entity);
+                            Review review = mapper.entityToApi(entity);
+                            review.setServiceAddress(serviceUtil.getServiceAddress());
+                            return review;
+                        }),
+                EntityManager::close)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public List<Review> getReviews(List<Integer> productIds, Deadline deadline, ServerTiming timing) {
+
+        productIds.stream().filter(productId -> productId < 1).findFirst().ifPresent(productId -> {
+            throw new InvalidInputException("Invalid productId: " + productId);
+        });
+
+        // One IN (...) query for all the products, sorted so that the reviews of a product are grouped together
+        List<ReviewEntity> entityList = withinDeadline(deadline, timing, "getReviews", () -> repository.findByProductIdInOrderByProductIdAscReviewIdAsc(productIds));
+        List<Review> list = mapper.entityListToApiList(entityList);
+        list.forEach(e -> e.setServiceAddress(serviceUtil.getServiceAddress()));
+
+        LOG.debug("getReviews: response size: {} for {} products", list.size(), productIds.size());
+
         return list;
     }
 
+    /**
+     * Runs the query in a transaction that times out at the deadline, if there is one. The
+     * remaining transaction time is applied as the JDBC query timeout, so the database stops
+     * working on the query when the caller has given up. JDBC query timeouts are in whole
+     * seconds, so the remaining time is rounded up.
+     */
+    private <T> T withinDeadline(Deadline deadline, ServerTiming timing, String work, Supplier<T> query) {
+        // The time spent in the database is reported as "db", if the Server-Timing header is enabled
+        Supplier<T> timed = (timing == null) ? query : () -> timing.time("db", work, query);
+        if (deadline == null) {
+            return timed.get();
+        }
+        deadline.check(work);
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        transaction.setTimeout((int) Math.max(1, (deadline.remaining().toMillis() + 999) / 1000));
+        try {
+            return transaction.execute(status -> timed.get());
+        } catch (QueryTimeoutException | TransactionTimedOutException ex) {
+            throw new DeadlineExceededException("Deadline exceeded during " + work, ex);
+        }
+    }
+
     @Override
     public void deleteReviews(int productId) {
         LOG.debug("deleteReviews: tries to delete reviews for the product with productId: {}", productId);
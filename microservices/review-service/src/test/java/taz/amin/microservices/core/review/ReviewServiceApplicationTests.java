@@ -4,17 +4,26 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import taz.amin.api.core.CursorPage;
+import taz.amin.api.core.ServerTiming;
 import taz.amin.api.core.review.Review;
 import taz.amin.microservices.core.review.persistence.ReviewRepository;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
 
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {"app.server-timing.enabled=true"})
 class ReviewServiceApplicationTests extends MySqlTestBase {
 
 	@Autowired
@@ -47,6 +56,114 @@ class ReviewServiceApplicationTests extends MySqlTestBase {
 				.jsonPath("$[2].reviewId").isEqualTo(3);
 	}
 
+	@Test
+	void getReviewsIsNotModified() {
+
+		int productId = 1;
+
+		postAndVerifyReview(productId, 1, OK);
+		String etag = client.get()
+				.uri("/review?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(Review.class)
+				.getResponseHeaders().getETag();
+
+		client.get()
+				.uri("/review?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.header(HttpHeaders.IF_NONE_MATCH, etag)
+				.exchange()
+				.expectStatus().isNotModified();
+
+		postAndVerifyReview(productId, 2, OK);
+		client.get()
+				.uri("/review?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.header(HttpHeaders.IF_NONE_MATCH, etag)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(2);
+	}
+
+	@Test
+	void getReviewPages() {
+
+		int productId = 1;
+
+		postAndVerifyReview(productId, 3, OK);
+		postAndVerifyReview(productId, 1, OK);
+		postAndVerifyReview(productId, 2, OK);
+		postAndVerifyReview(2, 1, OK);
+
+		getAndVerifyReviewsByProductId("?productId=" + productId + "&limit=2", OK)
+				.jsonPath("$.items.length()").isEqualTo(2)
+				.jsonPath("$.items[0].reviewId").isEqualTo(1)
+				.jsonPath("$.items[1].reviewId").isEqualTo(2)
+				.jsonPath("$.next").isEqualTo(CursorPage.encodeCursor(productId, 2));
+
+		getAndVerifyReviewsByProductId("?productId=" + productId + "&limit=2&after=" + CursorPage.encodeCursor(productId, 2), OK)
+				.jsonPath("$.items.length()").isEqualTo(1)
+				.jsonPath("$.items[0].reviewId").isEqualTo(3)
+				.jsonPath("$.next").doesNotExist();
+
+		getAndVerifyReviewsByProductId("?productId=" + productId + "&limit=2&after=" + CursorPage.encodeCursor(2, 2), UNPROCESSABLE_ENTITY);
+		getAndVerifyReviewsByProductId("?productId=" + productId + "&limit=0", UNPROCESSABLE_ENTITY);
+	}
+
+	@Test
+	void streamReviewsByProductId() {
+
+		int productId = 1;
+
+		postAndVerifyReview(productId, 1, OK);
+		postAndVerifyReview(productId, 2, OK);
+		postAndVerifyReview(productId, 3, OK);
+		postAndVerifyReview(2, 1, OK);
+
+		StepVerifier.create(client.get()
+						.uri("/review?productId=" + productId)
+						.accept(APPLICATION_NDJSON)
+						.exchange()
+						.expectStatus().isOk()
+						.expectHeader().contentType(APPLICATION_NDJSON)
+						.returnResult(Review.class)
+						.getResponseBody())
+				.expectNextCount(3)
+				.verifyComplete();
+	}
+
+	@Test
+	void getReviewsByProductIds() {
+
+		postAndVerifyReview(2, 1, OK);
+		postAndVerifyReview(1, 2, OK);
+		postAndVerifyReview(1, 1, OK);
+
+		getAndVerifyReviewsByProductId("?productIds=1,2,13", OK)
+				.jsonPath("$.length()").isEqualTo(3)
+				.jsonPath("$[0].productId").isEqualTo(1)
+				.jsonPath("$[0].reviewId").isEqualTo(1)
+				.jsonPath("$[1].productId").isEqualTo(1)
+				.jsonPath("$[1].reviewId").isEqualTo(2)
+				.jsonPath("$[2].productId").isEqualTo(2);
+	}
+
+	@Test
+	void getReviewsReportTheTimeSpentInTheDatabase() {
+		postAndVerifyReview(1, 1, OK);
+
+		client.get()
+				.uri("/review?productId=1")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().value(ServerTiming.HEADER, serverTiming ->
+						assertTrue(serverTiming.contains("db;desc=\"getReviews\";dur="), serverTiming));
+	}
+
 	@Test
 	void duplicateError() {
 
@@ -68,6 +185,35 @@ class ReviewServiceApplicationTests extends MySqlTestBase {
 		assertEquals(1, repository.count());
 	}
 
+	@Test
+	void createReviewsInBatch() {
+
+		int productId = 1;
+		postAndVerifyReview(productId, 2, OK);
+
+		List<Review> batch = List.of(
+				new Review(productId, 1, "Author 1", "Subject 1", "Content 1", "SA"),
+				new Review(productId, 2, "Author 2", "Subject 2", "Content 2", "SA"),
+				new Review(productId, 3, "Author 3", "Subject 3", "Content 3", "SA"),
+				new Review(productId, 3, "Author 3", "Subject 3", "Content 3", "SA"));
+
+		client.post()
+				.uri("/review/batch")
+				.body(Mono.just(batch), new ParameterizedTypeReference<List<Review>>() {})
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(4)
+				.jsonPath("$[0].status").isEqualTo(200)
+				.jsonPath("$[1].status").isEqualTo(422)
+				.jsonPath("$[1].message").isEqualTo("Duplicate key, Product Id: 1, Review Id:2")
+				.jsonPath("$[2].status").isEqualTo(200)
+				.jsonPath("$[3].status").isEqualTo(422);
+
+		assertEquals(3, repository.findByProductId(productId).size());
+	}
+
 	@Test
 	void deleteReviews() {
 
@@ -122,6 +122,13 @@ assertEqual 0 $(echo $RESPONSE | jq ".reviews | length")
 assertCurl 422 "curl http://$HOST:$PORT/product-composite/-1 -s"
 assertEqual "\"Invalid productId: -1\"" "$(echo $RESPONSE | jq .message)"
 
+# Verify that a batch lookup returns one entry per product id, with a 404 entry for the missing one
+assertCurl 200 "curl \"http://$HOST:$PORT/product-composite?productIds=$PROD_ID_REVS_RECS,$PROD_ID_NOT_FOUND\" -s"
+assertEqual 2 $(echo $RESPONSE | jq "length")
+assertEqual 200 $(echo $RESPONSE | jq ".[0].status")
+assertEqual 3 $(echo $RESPONSE | jq ".[0].aggregate.reviews | length")
+assertEqual 404 $(echo $RESPONSE | jq ".[1].status")
+
 if [[ $@ == *"stop"* ]]
 then
     echo "We are done, stopping the test environment..."
@@ -0,0 +1,79 @@
+package taz.amin.util.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import taz.amin.api.core.Deadline;
+
+import java.time.Duration;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.GATEWAY_TIMEOUT;
+
+/**
+ * Sets the deadline of each incoming request, from the {@link Deadline#HEADER} header if the
+ * caller sent one or else from the configured default timeout, if any.
+ *
+ * The default timeout only applies to reads. A write that spans several services would be left
+ * half done if it was cut short by a deadline its caller did not ask for.
+ *
+ * Requests whose deadline has already passed are rejected with 504 without being handled. A
+ * caller cannot ask for more than the configured maximum timeout.
+ */
+@Component
+public class DeadlineWebFilter implements WebFilter {
+    private static final Logger LOG = LoggerFactory.getLogger(DeadlineWebFilter.class);
+
+    private final Duration defaultTimeout;
+    private final Duration maxTimeout;
+
+    @Autowired
+    public DeadlineWebFilter(
+            @Value("${app.request-deadline.default-timeout:0s}") Duration defaultTimeout,
+            @Value("${app.request-deadline.max-timeout:5m}") Duration maxTimeout) {
+
+        this.defaultTimeout = defaultTimeout;
+        this.maxTimeout = maxTimeout;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String headerValue = exchange.getRequest().getHeaders().getFirst(Deadline.HEADER);
+
+        Deadline deadline;
+        if (headerValue != null) {
+            try {
+                deadline = Deadline.fromHeaderValue(headerValue, maxTimeout);
+            } catch (NumberFormatException ex) {
+                LOG.debug("Rejects a request with an invalid {} header: {}", Deadline.HEADER, headerValue);
+                exchange.getResponse().setStatusCode(BAD_REQUEST);
+                return exchange.getResponse().setComplete();
+            }
+        } else if (!defaultTimeout.isZero() && isRead(exchange.getRequest().getMethod())) {
+            deadline = Deadline.after(defaultTimeout);
+        } else {
+            return chain.filter(exchange);
+        }
+
+        if (deadline.isExpired()) {
+            LOG.debug("Rejects a request to {} whose deadline has already passed", exchange.getRequest().getPath());
+            exchange.getResponse().setStatusCode(GATEWAY_TIMEOUT);
+            return exchange.getResponse().setComplete();
+        }
+
+        exchange.getAttributes().put(Deadline.ATTRIBUTE, deadline);
+        return chain.filter(exchange).contextWrite(Context.of(Deadline.class, deadline));
+    }
+
+    private static boolean isRead(HttpMethod method) {
+        return HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method);
+    }
+}
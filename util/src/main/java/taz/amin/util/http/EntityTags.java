@@ -0,0 +1,94 @@
+package taz.amin.util.http;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Builds weak entity tags from what a response is created from, the database ids and versions of
+ * the entities and the other values that end up in the body. A response can then be tagged, and a
+ * 304 returned for it, without serializing or hashing the body.
+ *
+ * The database id is needed besides the version, since an entity that is deleted and created
+ * again starts over at the same version, but gets a new database id.
+ *
+ * The tags are weak since they are derived from the entities and not from the bytes of the body.
+ * The same entities are sent as JSON or Smile, gzip compressed or not, depending on the Accept and
+ * Accept-Encoding headers of the request, which the responses vary by, and the service address in
+ * the body is left out of the tag.
+ */
+public class EntityTags {
+    private static final int TAG_BYTES = 16;
+
+    private final MessageDigest digest;
+
+    private EntityTags() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException("SHA-256 is not supported", nsae);
+        }
+    }
+
+    public static EntityTags builder() {
+        return new EntityTags();
+    }
+
+    /**
+     * @param tag a tag from {@link #build()}
+     * @return a 200 response with the tag as a weak ETag, that varies by the Accept and Accept-Encoding headers
+     */
+    public static ResponseEntity.BodyBuilder ok(String tag) {
+        return ResponseEntity.ok()
+                .eTag("W/\"" + tag + "\"")
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+    }
+
+    /**
+     * @param id the database id of the entity
+     * @param version the version of the entity, null if it has not been stored
+     */
+    public EntityTags add(String id, Integer version) {
+        add(id);
+        return add((version == null) ? -1 : version);
+    }
+
+    /**
+     * @param id the database id of the entity
+     * @param version the version of the entity
+     */
+    public EntityTags add(int id, int version) {
+        add(id);
+        return add(version);
+    }
+
+    public EntityTags add(int value) {
+        digest.update((byte) (value >>> 24));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) value);
+        return this;
+    }
+
+    public EntityTags add(String value) {
+        if (value == null) {
+            return add(-1);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        add(bytes.length);
+        digest.update(bytes);
+        return this;
+    }
+
+    /**
+     * @return the tag, without the surrounding quotes
+     */
+    public String build() {
+        byte[] hash = digest.digest();
+        return HexFormat.of().formatHex(hash, 0, TAG_BYTES);
+    }
+}
@@ -10,8 +10,10 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
 import taz.amin.api.exceptions.BadRequestException;
+import taz.amin.api.exceptions.DeadlineExceededException;
 import taz.amin.api.exceptions.InvalidInputException;
 import taz.amin.api.exceptions.NotFoundException;
+import taz.amin.api.exceptions.ServiceUnavailableException;
 
 import static org.springframework.http.HttpStatus.*;
 
@@ -43,6 +45,22 @@ public class GlobalControllerExceptionHandler {
         return createHttpErrorInfo(UNPROCESSABLE_ENTITY, request, ex);
     }
 
+    @ResponseStatus(SERVICE_UNAVAILABLE)
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public @ResponseBody HttpErrorInfo handleServiceUnavailableException(
+            ServerHttpRequest request, ServiceUnavailableException ex) {
+
+        return createHttpErrorInfo(SERVICE_UNAVAILABLE, request, ex);
+    }
+
+    @ResponseStatus(GATEWAY_TIMEOUT)
+    @ExceptionHandler(DeadlineExceededException.class)
+    public @ResponseBody HttpErrorInfo handleDeadlineExceededException(
+            ServerHttpRequest request, DeadlineExceededException ex) {
+
+        return createHttpErrorInfo(GATEWAY_TIMEOUT, request, ex);
+    }
+
     private HttpErrorInfo createHttpErrorInfo(
             HttpStatus httpStatus, ServerHttpRequest request, Exception ex) {
 
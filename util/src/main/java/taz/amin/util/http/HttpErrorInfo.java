@@ -2,9 +2,13 @@ package taz.amin.util.http;
 
 import org.springframework.http.HttpStatus;
 
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
 
 public class HttpErrorInfo {
+    // ZonedDateTime.now() looks up, and copies, the default time zone on every call
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
     private final ZonedDateTime timestamp;
     private final String path;
     private final HttpStatus httpStatus;
@@ -18,7 +22,7 @@ public class HttpErrorInfo {
     }
 
     public HttpErrorInfo(HttpStatus httpStatus, String path, String message) {
-        timestamp = ZonedDateTime.now();
+        timestamp = ZonedDateTime.now(ZONE);
         this.httpStatus = httpStatus;
         this.path = path;
         this.message = message;
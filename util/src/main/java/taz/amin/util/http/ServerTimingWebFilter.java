@@ -0,0 +1,51 @@
+package taz.amin.util.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import taz.amin.api.core.ServerTiming;
+
+/**
+ * If enabled, collects the {@link ServerTiming} of each request and sends it back in the
+ * {@link ServerTiming#HEADER} header when the response starts.
+ *
+ * Disabled by default, since the header tells the callers how the service works inside.
+ */
+@Component
+public class ServerTimingWebFilter implements WebFilter {
+    private static final Logger LOG = LoggerFactory.getLogger(ServerTimingWebFilter.class);
+
+    private final boolean enabled;
+
+    @Autowired
+    public ServerTimingWebFilter(@Value("${app.server-timing.enabled:false}") boolean enabled) {
+        this.enabled = enabled;
+
+        if (enabled) {
+            LOG.info("Sends the time spent per step of each request in the {} header", ServerTiming.HEADER);
+        }
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!enabled) {
+            return chain.filter(exchange);
+        }
+
+        ServerTiming timing = new ServerTiming();
+        exchange.getResponse().beforeCommit(() -> {
+            exchange.getResponse().getHeaders().set(ServerTiming.HEADER, timing.toHeaderValue());
+            return Mono.empty();
+        });
+
+        exchange.getAttributes().put(ServerTiming.ATTRIBUTE, timing);
+        return chain.filter(exchange).contextWrite(Context.of(ServerTiming.class, timing));
+    }
+}
@@ -0,0 +1,49 @@
+package taz.amin.util.persistence;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.query.Query;
+import taz.amin.api.core.Deadline;
+import taz.amin.api.core.ServerTiming;
+import taz.amin.api.exceptions.DeadlineExceededException;
+
+import java.util.function.Supplier;
+
+/**
+ * Runs the MongoDB queries of the core services within the deadline of the request, if there is
+ * one, and reports the time spent in the database in the Server-Timing header, if it is enabled.
+ */
+public final class MongoQueries {
+
+    private MongoQueries() {
+    }
+
+    /**
+     * Limits the query to the time left before the deadline, if there is one, so that the
+     * database stops working on it when the caller has given up.
+     */
+    public static Query limitedTo(Query query, Deadline deadline) {
+        // A maxTime of 0 would mean no limit at all
+        return (deadline == null) ? query : query.maxTimeMsec(Math.max(1, deadline.remaining().toMillis()));
+    }
+
+    /**
+     * @param work the name of the query, e.g. "getProduct"
+     * @throws DeadlineExceededException if the deadline has passed before or while the query ran
+     */
+    public static <T> T withinDeadline(Deadline deadline, ServerTiming timing, String work, Supplier<T> query) {
+        // The time spent in the database is reported as "db", if the Server-Timing header is enabled
+        Supplier<T> timed = (timing == null) ? query : () -> timing.time("db", work, query);
+        if (deadline == null) {
+            return timed.get();
+        }
+        deadline.check(work);
+        try {
+            return timed.get();
+        } catch (DataAccessException dae) {
+            if (deadline.isExpired()) {
+                throw new DeadlineExceededException("Deadline exceeded during " + work, dae);
+            }
+            throw dae;
+        }
+    }
+}